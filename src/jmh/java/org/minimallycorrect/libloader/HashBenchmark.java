@@ -0,0 +1,50 @@
+package org.minimallycorrect.libloader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+	@Param({"1", "10", "100"})
+	public int megabytes;
+
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = File.createTempFile("libloader-benchmark", ".jar");
+		byte[] chunk = new byte[1 << 20];
+		new Random(0).nextBytes(chunk);
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+			for (int i = 0; i < megabytes; i++)
+				os.write(chunk);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file.toPath());
+	}
+
+	@Benchmark
+	public String sha512() {
+		return Sha512.compute(file);
+	}
+
+	/**
+	 * Repeated hash of an unchanged file within one startup
+	 */
+	@Benchmark
+	public String sha512Known() {
+		return LibLoaderChained.Library.sha512(file);
+	}
+}
@@ -0,0 +1,39 @@
+package org.minimallycorrect.libloader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LibraryBenchmark {
+	private LibLoaderChained.Library a;
+	private LibLoaderChained.Library b;
+	private LibLoaderChained.Library c;
+
+	@Setup
+	public void setUp() {
+		a = library("1.2.3", "1500000000000");
+		b = library("1.2.3", "1500000000001");
+		c = library("1.2.4-SNAPSHOT", "1500000000000");
+	}
+
+	static LibLoaderChained.Library library(String version, String buildTime) {
+		return new LibLoaderChained.Library("org.example", "example", null, Version.of(version),
+			"00", null, "example.jar", buildTime, null);
+	}
+
+	@Benchmark
+	public int compareToSameVersion() {
+		return a.compareTo(b);
+	}
+
+	@Benchmark
+	public int compareToDifferentVersion() {
+		return a.compareTo(c);
+	}
+}
@@ -0,0 +1,87 @@
+package org.minimallycorrect.libloader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManifestBenchmark {
+	@Param({"10", "1000"})
+	public int entries;
+
+	@Param({"true", "false"})
+	public boolean manifestFirst;
+
+	@Param({"false", "true"})
+	public boolean descriptor;
+
+	private File jar;
+
+	@Setup
+	public void setUp() throws IOException {
+		jar = File.createTempFile("libloader-benchmark", ".jar");
+		Manifest manifest = new Manifest();
+		Attributes main = manifest.getMainAttributes();
+		main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		for (int i = 0; i < 10; i++) {
+			main.putValue("LibLoader-group" + i, "org.example");
+			main.putValue("LibLoader-name" + i, "example" + i);
+			main.putValue("LibLoader-version" + i, "1.2." + i);
+			main.putValue("LibLoader-sha512hash" + i, String.format("%0128x", i));
+			main.putValue("LibLoader-file" + i, "META-INF/libraries/example" + i + ".jar");
+			main.putValue("LibLoader-buildTime" + i, "1500000000000");
+		}
+		byte[] descriptorBytes = null;
+		if (descriptor) {
+			File manifestOnly = File.createTempFile("libloader-benchmark", ".jar");
+			try {
+				try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(manifestOnly), manifest)) {
+					jos.flush();
+				}
+				descriptorBytes = Descriptor.create(manifestOnly);
+			} finally {
+				Files.deleteIfExists(manifestOnly.toPath());
+			}
+		}
+		byte[] content = new byte[4096];
+		new Random(0).nextBytes(content);
+		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+			if (manifestFirst)
+				writeManifest(jos, manifest);
+			if (descriptorBytes != null) {
+				jos.putNextEntry(new JarEntry(Descriptor.NAME));
+				jos.write(descriptorBytes);
+			}
+			for (int i = 0; i < entries; i++) {
+				jos.putNextEntry(new JarEntry("org/example/Class" + i + ".class"));
+				jos.write(content);
+			}
+			if (!manifestFirst)
+				writeManifest(jos, manifest);
+		}
+	}
+
+	private static void writeManifest(JarOutputStream jos, Manifest manifest) throws IOException {
+		jos.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
+		manifest.write(jos);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(jar.toPath());
+	}
+
+	@Benchmark
+	public List<LibLoaderChained.Library> readDeclarations() throws IOException {
+		return LibLoaderChained.readDeclarations(jar);
+	}
+}
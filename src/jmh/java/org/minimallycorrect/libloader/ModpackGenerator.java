@@ -0,0 +1,198 @@
+package org.minimallycorrect.libloader;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.jar.*;
+
+/**
+ * Generates synthetic mods folders with LibLoader-file embedded libraries
+ * <p>
+ * Every mod embeds {@link Shape#libraries} libraries. A fraction of those reuse a library another mod already
+ * embeds, and a fraction declare another version of a library another mod already embeds. Each library embeds a
+ * chain of {@link Shape#depth} further libraries.
+ */
+public class ModpackGenerator {
+	static final String LIBLOADER_VERSION = "1.0";
+
+	private final Shape shape;
+	private final Random random;
+	private final List<Declaration> declared = new ArrayList<>();
+
+	public ModpackGenerator(Shape shape) {
+		this.shape = shape;
+		this.random = new Random(shape.seed);
+	}
+
+	public void generate(Path mods) throws IOException {
+		Files.createDirectories(mods);
+		for (int i = 0; i < shape.jars; i++) {
+			List<Declaration> libraries = new ArrayList<>();
+			for (int j = 0; j < shape.libraries; j++)
+				libraries.add(pickLibrary(i, j, libraries));
+			Files.write(mods.resolve(String.format("mod%04d.jar", i)), jar("mod" + i, libraries, i == 0));
+		}
+		// LibLoader only stays installed if a mod embeds the same or a newer version of it
+		Files.write(mods.resolve("# LibLoader.jar"), libLoaderJar());
+	}
+
+	private Declaration pickLibrary(int jar, int index, List<Declaration> picked) throws IOException {
+		double roll = random.nextDouble();
+		Declaration existing = declared.isEmpty() ? null : declared.get(random.nextInt(declared.size()));
+		// a jar can only embed one version of each library
+		for (Declaration declaration : picked)
+			if (existing != null && declaration.name.equals(existing.name))
+				existing = null;
+		if (existing != null && roll < shape.duplicates)
+			return existing;
+		if (existing != null && roll < shape.duplicates + shape.conflicts) {
+			String version = existing.version + "." + (random.nextInt(9) + 1);
+			return add(new Declaration(existing.name, version, library(existing.name, version, shape.depth)));
+		}
+		String name = "lib" + jar + "x" + index;
+		return add(new Declaration(name, "1.0", library(name, "1.0", shape.depth)));
+	}
+
+	private Declaration add(Declaration declaration) {
+		declared.add(declaration);
+		return declaration;
+	}
+
+	private byte[] library(String name, String version, int depth) throws IOException {
+		List<Declaration> dependencies = new ArrayList<>();
+		if (depth > 0) {
+			String dependency = name + "-dep" + depth;
+			dependencies.add(new Declaration(dependency, version, library(dependency, version, depth - 1)));
+		}
+		return jar(name, dependencies, false);
+	}
+
+	private byte[] jar(String name, List<Declaration> libraries, boolean embedLibLoader) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes main = manifest.getMainAttributes();
+		main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		int i = 0;
+		for (Declaration library : libraries) {
+			main.putValue("LibLoader-group" + i, "org.example.generated");
+			main.putValue("LibLoader-name" + i, library.name);
+			main.putValue("LibLoader-version" + i, library.version);
+			main.putValue("LibLoader-sha512hash" + i, library.hash);
+			main.putValue("LibLoader-file" + i, library.file());
+			main.putValue("LibLoader-buildTime" + i, "1500000000000");
+			i++;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream jos = new JarOutputStream(bytes, manifest)) {
+			jos.putNextEntry(new JarEntry(name.replace('-', '/') + "/Main.class"));
+			byte[] content = new byte[shape.size];
+			random.nextBytes(content);
+			jos.write(content);
+			for (Declaration library : libraries) {
+				jos.putNextEntry(new JarEntry(library.file()));
+				jos.write(library.bytes);
+			}
+			if (embedLibLoader) {
+				jos.putNextEntry(new JarEntry("LibLoader.version"));
+				jos.write(LIBLOADER_VERSION.getBytes("UTF-8"));
+				jos.putNextEntry(new JarEntry("LibLoader.jar"));
+				jos.write(libLoaderJar());
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] libLoaderJar() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream jos = new JarOutputStream(bytes)) {
+			jos.putNextEntry(new JarEntry("LibLoader.version"));
+			jos.write(LIBLOADER_VERSION.getBytes("UTF-8"));
+		}
+		return bytes.toByteArray();
+	}
+
+	static String sha512(byte[] bytes) {
+		try {
+			return Sha512.toHex(MessageDigest.getInstance("SHA-512").digest(bytes));
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static class Declaration {
+		final String name;
+		final String version;
+		final byte[] bytes;
+		final String hash;
+
+		Declaration(String name, String version, byte[] bytes) {
+			this.name = name;
+			this.version = version;
+			this.bytes = bytes;
+			this.hash = sha512(bytes);
+		}
+
+		String file() {
+			return "META-INF/libraries/" + name + '-' + version + ".jar";
+		}
+	}
+
+	/**
+	 * Parsed from {@code name:key=value,key=value}, for example {@code small:jars=100,libraries=3,depth=1}
+	 */
+	public static class Shape {
+		public String name = "default";
+		public int jars = 100;
+		public int libraries = 2;
+		public int depth = 1;
+		public double duplicates = 0.3;
+		public double conflicts = 0.1;
+		public int size = 64 * 1024;
+		public long seed = 0;
+
+		public static Shape parse(String spec) {
+			Shape shape = new Shape();
+			int colon = spec.indexOf(':');
+			shape.name = colon == -1 ? spec : spec.substring(0, colon);
+			if (colon == -1)
+				return shape;
+			for (String option : spec.substring(colon + 1).split(",")) {
+				String[] parts = option.split("=", 2);
+				String value = parts[1].trim();
+				switch (parts[0].trim()) {
+					case "jars":
+						shape.jars = Integer.parseInt(value);
+						break;
+					case "libraries":
+						shape.libraries = Integer.parseInt(value);
+						break;
+					case "depth":
+						shape.depth = Integer.parseInt(value);
+						break;
+					case "duplicates":
+						shape.duplicates = Double.parseDouble(value);
+						break;
+					case "conflicts":
+						shape.conflicts = Double.parseDouble(value);
+						break;
+					case "size":
+						shape.size = Integer.parseInt(value);
+						break;
+					case "seed":
+						shape.seed = Long.parseLong(value);
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown shape option '" + parts[0] + "' in '" + spec + '\'');
+				}
+			}
+			return shape;
+		}
+
+		@Override
+		public String toString() {
+			return name + ":jars=" + jars + ",libraries=" + libraries + ",depth=" + depth + ",duplicates=" + duplicates
+				+ ",conflicts=" + conflicts + ",size=" + size + ",seed=" + seed;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.minimallycorrect.libloader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+	@Param({"100", "1000"})
+	public int jars;
+
+	@Param({"1", "4"})
+	public int depth;
+
+	private Path mods;
+
+	@Setup
+	public void setUp() throws IOException {
+		mods = Files.createTempDirectory("libloader-benchmark");
+		for (int i = 0; i < jars; i++) {
+			Path directory = mods;
+			// spread jars between the mods folder itself and nested mods/<n>/... folders
+			if (i % 2 == 1) {
+				directory = directory.resolve("mods");
+				for (int d = 1; d < depth; d++)
+					directory = directory.resolve(String.valueOf(i % (d + 3)));
+			}
+			Files.createDirectories(directory);
+			Files.write(directory.resolve("mod" + i + ".jar"), new byte[i % 512]);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.walkFileTree(mods, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Benchmark
+	public List<?> search() {
+		return LibLoader.search(mods.toFile());
+	}
+}
@@ -0,0 +1,205 @@
+package org.minimallycorrect.libloader;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * End to end startup benchmark over generated mods folders
+ * <p>
+ * For each {@link ModpackGenerator.Shape}, times LibLoader.checkForChanges followed by LibLoaderChained.loadLibraries
+ * in a fresh JVM for three scenarios:
+ * <ul>
+ * <li>cold: empty libraries folder</li>
+ * <li>warm: nothing changed since the last start, so the cached libraries are used</li>
+ * <li>changed: one mod jar was modified, forcing a full resolve against already extracted libraries</li>
+ * </ul>
+ * Results are written as a flat JSON object of {@code "shape/scenario": milliseconds}. If a baseline in the same
+ * format is given, any result slower than the baseline by more than the tolerance fails the run.
+ * <p>
+ * Usage: {@code [--shape name:jars=100,...]... [--runs 3] [--output file] [--baseline file] [--tolerance 0.25]}
+ */
+public class StartupBenchmark {
+	private static final String[] DEFAULT_SHAPES = {
+		"small:jars=100,libraries=2,depth=1",
+		"medium:jars=300,libraries=3,depth=2",
+		"large:jars=1000,libraries=3,depth=2",
+	};
+	private static final Pattern RESULT = Pattern.compile("\"([^\"]+)\"\\s*:\\s*([0-9.]+)");
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && args[0].equals("--run")) {
+			run(new File(args[1]), new File(args[2]));
+			return;
+		}
+
+		List<ModpackGenerator.Shape> shapes = new ArrayList<>();
+		int runs = 3;
+		File output = new File("build/startup-benchmark.json");
+		File baseline = null;
+		double tolerance = 0.25;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--shape":
+					shapes.add(ModpackGenerator.Shape.parse(args[++i]));
+					break;
+				case "--runs":
+					runs = Integer.parseInt(args[++i]);
+					break;
+				case "--output":
+					output = new File(args[++i]);
+					break;
+				case "--baseline":
+					baseline = new File(args[++i]);
+					break;
+				case "--tolerance":
+					tolerance = Double.parseDouble(args[++i]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown argument '" + args[i] + '\'');
+			}
+		}
+		if (shapes.isEmpty())
+			for (String shape : DEFAULT_SHAPES)
+				shapes.add(ModpackGenerator.Shape.parse(shape));
+
+		Map<String, Double> results = new LinkedHashMap<>();
+		for (ModpackGenerator.Shape shape : shapes)
+			benchmark(shape, runs, results);
+
+		write(results, output);
+		System.out.println("Wrote " + output);
+		if (baseline != null && !compare(results, read(baseline), tolerance))
+			System.exit(1);
+	}
+
+	private static void benchmark(ModpackGenerator.Shape shape, int runs, Map<String, Double> results) throws Exception {
+		System.out.println("Generating " + shape);
+		Path root = Files.createTempDirectory("libloader-startup-benchmark");
+		try {
+			Path mods = root.resolve("mods");
+			Path libraries = root.resolve("libraries");
+			new ModpackGenerator(shape).generate(mods);
+			Path changedMod = mods.resolve("mod0000.jar");
+
+			double[] cold = new double[runs];
+			double[] warm = new double[runs];
+			double[] changed = new double[runs];
+			for (int i = 0; i < runs; i++) {
+				delete(libraries);
+				cold[i] = fork(mods, libraries);
+				warm[i] = fork(mods, libraries);
+				Files.setLastModifiedTime(changedMod, FileTime.fromMillis(System.currentTimeMillis() + 2000 * (i + 1)));
+				changed[i] = fork(mods, libraries);
+			}
+			results.put(shape.name + "/cold", median(cold));
+			results.put(shape.name + "/warm", median(warm));
+			results.put(shape.name + "/changed", median(changed));
+			System.out.println(shape.name + ": cold " + median(cold) + "ms, warm " + median(warm) + "ms, changed " + median(changed) + "ms");
+		} finally {
+			delete(root);
+		}
+	}
+
+	/**
+	 * Runs one startup in a new JVM, so nothing is shared with earlier runs except the files on disk
+	 */
+	private static double fork(Path mods, Path libraries) throws Exception {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+			StartupBenchmark.class.getName(), "--run", mods.toString(), libraries.toString())
+			.redirectErrorStream(true)
+			.start();
+		String result = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("startup "))
+					result = line.substring("startup ".length());
+			}
+		}
+		if (process.waitFor() != 0 || result == null)
+			throw new IllegalStateException("Startup run failed for " + mods);
+		return Double.parseDouble(result);
+	}
+
+	private static void run(File mods, File libraries) {
+		long start = System.nanoTime();
+		File libLoaderJar = new File(mods, "# LibLoader.jar");
+		Boolean anyChanges = LibLoader.checkForChanges(mods, libraries, libLoaderJar, false);
+		if (anyChanges == null)
+			throw new IllegalStateException("LibLoader removed itself");
+		List<File> libs = LibLoaderChained.loadLibraries(mods, libraries, anyChanges);
+		long elapsed = System.nanoTime() - start;
+		if (libs.isEmpty())
+			throw new IllegalStateException("No libraries loaded");
+		System.out.println("startup " + elapsed / 1000000.0);
+	}
+
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	private static boolean compare(Map<String, Double> results, Map<String, Double> baseline, double tolerance) {
+		boolean ok = true;
+		for (Map.Entry<String, Double> entry : results.entrySet()) {
+			Double expected = baseline.get(entry.getKey());
+			if (expected == null)
+				continue;
+			double change = entry.getValue() / expected - 1;
+			String line = String.format("%s: %.1fms, baseline %.1fms (%+.0f%%)", entry.getKey(), entry.getValue(), expected, change * 100);
+			if (change > tolerance) {
+				ok = false;
+				System.out.println("REGRESSION " + line);
+			} else {
+				System.out.println(line);
+			}
+		}
+		return ok;
+	}
+
+	private static void write(Map<String, Double> results, File output) throws IOException {
+		StringBuilder sb = new StringBuilder("{\n");
+		Iterator<Map.Entry<String, Double>> iterator = results.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Double> entry = iterator.next();
+			sb.append("\t\"").append(entry.getKey()).append("\": ").append(String.format(Locale.ROOT, "%.1f", entry.getValue()));
+			sb.append(iterator.hasNext() ? ",\n" : "\n");
+		}
+		sb.append("}\n");
+		File parent = output.getAbsoluteFile().getParentFile();
+		Files.createDirectories(parent.toPath());
+		Files.write(output.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Map<String, Double> read(File baseline) throws IOException {
+		Map<String, Double> results = new LinkedHashMap<>();
+		Matcher matcher = RESULT.matcher(new String(Files.readAllBytes(baseline.toPath()), StandardCharsets.UTF_8));
+		while (matcher.find())
+			results.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+		return results;
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (!Files.exists(path))
+			return;
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
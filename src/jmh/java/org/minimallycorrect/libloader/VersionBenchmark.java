@@ -0,0 +1,45 @@
+package org.minimallycorrect.libloader;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionBenchmark {
+	@Param({"1", "1.12.2", "2.11.0-SNAPSHOT", "20.0.1.5-beta"})
+	public String version;
+
+	private Version a;
+	private Version b;
+
+	@Setup
+	public void setUp() {
+		a = Version.of(version);
+		b = Version.of(version + ".1");
+	}
+
+	@Benchmark
+	public Version parse() {
+		return Version.of(version);
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return a.compareTo(b);
+	}
+
+	@Benchmark
+	public int compareToEqual() {
+		return a.compareTo(Version.of(version));
+	}
+
+	@Benchmark
+	public int hashCodeOf() {
+		return a.hashCode();
+	}
+}
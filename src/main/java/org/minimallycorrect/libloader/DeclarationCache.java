@@ -0,0 +1,91 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+import org.minimallycorrect.libloader.LibLoaderChained.Library;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Library declarations read by earlier resolutions, so a changed mods folder only has its new or modified jars read
+ * <p>
+ * Declarations of mod jars are keyed by their {@link FileState}, and those of libraries by their hash, as a library's
+ * declarations can never change without its hash changing. Only entries used by the latest resolution are written
+ * back, so removed and modified jars are dropped. Every declaration is offered again on each resolution, so winners
+ * are recomputed for all keys, but that is done in memory. The declarations use the {@link Descriptor} encoding.
+ */
+final class DeclarationCache {
+	private static final int MAGIC = 0x4C4C4443;
+	private static final int VERSION = 1;
+
+	private final Map<Object, Entry> previous;
+	private final ConcurrentHashMap<Object, Entry> current = new ConcurrentHashMap<>();
+
+	private DeclarationCache(Map<Object, Entry> previous) {
+		this.previous = previous;
+	}
+
+	/**
+	 * @return the cache written by the last resolution, or an empty one
+	 */
+	static DeclarationCache read(File f) {
+		Map<Object, Entry> previous = StateFile.read(f, MAGIC, VERSION, in -> {
+			val count = in.readInt();
+			val entries = new HashMap<Object, Entry>(count * 2);
+			for (int i = 0; i < count; i++) {
+				val key = in.readBoolean() ? FileState.read(in) : in.readUTF();
+				val source = new File(in.readUTF());
+				entries.put(key, new Entry(source, Descriptor.readLibraries(in, source)));
+			}
+			return entries;
+		});
+		return new DeclarationCache(previous == null ? Collections.emptyMap() : previous);
+	}
+
+	void write(File f) {
+		StateFile.write(f, MAGIC, VERSION, out -> {
+			out.writeInt(current.size());
+			for (val entry : current.entrySet()) {
+				val key = entry.getKey();
+				out.writeBoolean(key instanceof FileState);
+				if (key instanceof FileState)
+					((FileState) key).write(out);
+				else
+					out.writeUTF((String) key);
+				out.writeUTF(entry.getValue().source.getPath());
+				Descriptor.writeLibraries(out, entry.getValue().declarations);
+			}
+		});
+	}
+
+	/**
+	 * @param key the {@link FileState} of a mod jar, or the hash of a library
+	 * @return the declarations last read for the key, or null if they must be read
+	 */
+	List<Library> get(Object key) {
+		val entry = previous.get(key);
+		if (entry == null)
+			return null;
+		current.put(key, entry);
+		return entry.declarations;
+	}
+
+	/**
+	 * @return the given declarations
+	 */
+	List<Library> put(Object key, File source, List<Library> declarations) {
+		current.put(key, new Entry(source, declarations));
+		return declarations;
+	}
+
+	private static class Entry {
+		final File source;
+		final List<Library> declarations;
+
+		Entry(File source, List<Library> declarations) {
+			this.source = source;
+			this.declarations = declarations;
+		}
+	}
+}
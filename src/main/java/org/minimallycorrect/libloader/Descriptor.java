@@ -0,0 +1,132 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+import org.minimallycorrect.libloader.LibLoaderChained.Library;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Precomputed list of the libraries a jar declares, stored in the jar as {@code META-INF/libloader.idx}
+ * <p>
+ * Holds the same declarations as the LibLoader-* manifest attributes, already parsed: coordinates, version parts,
+ * raw SHA-512 hashes and the size of each library. It is read in preference to the manifest, so jars which include
+ * one are never manifest or version parsed. The entry uses the {@link StateFile} format, and the declaration encoding
+ * is shared with state which persists declarations between starts.
+ */
+final class Descriptor {
+	static final String NAME = "META-INF/libloader.idx";
+	private static final int MAGIC = 0x4C4C4944;
+	private static final int VERSION = 1;
+	private static final int CLASSIFIER = 1;
+	private static final int HAS_VERSION = 2;
+	private static final int SUFFIX = 4;
+	private static final int HASH = 8;
+	private static final int URL = 16;
+	private static final int FILE = 32;
+	private static final int BUILD_TIME = 64;
+
+	private Descriptor() {
+	}
+
+	/**
+	 * @return the declarations, or null if the descriptor is corrupt or from another format version
+	 */
+	static List<Library> read(InputStream in, String name, File source) {
+		return StateFile.read(in, name, MAGIC, VERSION, data -> readLibraries(data, source));
+	}
+
+	static byte[] write(Collection<Library> libraries) throws IOException {
+		return StateFile.encode(MAGIC, VERSION, out -> writeLibraries(out, libraries));
+	}
+
+	/**
+	 * Creates the descriptor for a jar from its manifest, with the size of each library embedded in it
+	 */
+	static byte[] create(File jar) throws IOException {
+		try (val zip = new ZipFile(jar)) {
+			val libraries = LibLoaderChained.readDeclarations(LibLoaderChained.readManifest(zip), jar);
+			for (val lib : libraries) {
+				val embedded = lib.file == null ? null : zip.getEntry(lib.file);
+				if (embedded != null)
+					lib.size = embedded.getSize();
+			}
+			return write(libraries);
+		}
+	}
+
+	static List<Library> readLibraries(DataInput in, File source) throws IOException {
+		val count = in.readInt();
+		val libraries = new ArrayList<Library>(count);
+		for (int i = 0; i < count; i++) {
+			val flags = in.readUnsignedByte();
+			val group = in.readUTF();
+			val name = in.readUTF();
+			val classifier = (flags & CLASSIFIER) != 0 ? in.readUTF() : null;
+			Version version = null;
+			if ((flags & HAS_VERSION) != 0) {
+				val parts = new int[in.readUnsignedByte()];
+				for (int j = 0; j < parts.length; j++)
+					parts[j] = in.readInt();
+				version = Version.of(parts, (flags & SUFFIX) != 0 ? in.readUTF() : null);
+			}
+			String hash = null;
+			if ((flags & HASH) != 0) {
+				val bytes = new byte[64];
+				in.readFully(bytes);
+				hash = Sha512.toHex(bytes);
+			}
+			val url = (flags & URL) != 0 ? in.readUTF() : null;
+			val file = (flags & FILE) != 0 ? in.readUTF() : null;
+			val buildTime = (flags & BUILD_TIME) != 0 ? in.readUTF() : null;
+			val lib = new Library(group, name, classifier, version, hash, url, file, buildTime, source);
+			lib.size = in.readLong();
+			libraries.add(lib);
+		}
+		return libraries;
+	}
+
+	static void writeLibraries(DataOutput out, Collection<Library> libraries) throws IOException {
+		out.writeInt(libraries.size());
+		for (val lib : libraries) {
+			val version = lib.version;
+			out.writeByte((lib.classifier == null ? 0 : CLASSIFIER)
+				| (version == null ? 0 : HAS_VERSION)
+				| (version == null || version.suffix == null ? 0 : SUFFIX)
+				| (lib.sha512hash == null ? 0 : HASH)
+				| (lib.url == null ? 0 : URL)
+				| (lib.file == null ? 0 : FILE)
+				| (lib.buildTime == null ? 0 : BUILD_TIME));
+			out.writeUTF(lib.group);
+			out.writeUTF(lib.name);
+			if (lib.classifier != null)
+				out.writeUTF(lib.classifier);
+			if (version != null) {
+				out.writeByte(version.parts.length);
+				for (val part : version.parts)
+					out.writeInt(part);
+				if (version.suffix != null)
+					out.writeUTF(version.suffix);
+			}
+			if (lib.sha512hash != null)
+				out.write(fromHex(lib.sha512hash));
+			if (lib.url != null)
+				out.writeUTF(lib.url);
+			if (lib.file != null)
+				out.writeUTF(lib.file);
+			if (lib.buildTime != null)
+				out.writeUTF(lib.buildTime);
+			out.writeLong(lib.size);
+		}
+	}
+
+	private static byte[] fromHex(String hex) {
+		if (hex.length() != 128)
+			throw new IllegalArgumentException("Expected a hex encoded SHA-512 hash, got '" + hex + '\'');
+		val bytes = new byte[64];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		return bytes;
+	}
+}
@@ -0,0 +1,139 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.concurrent.*;
+
+/**
+ * Downloads URL sourced libraries
+ * <p>
+ * At most {@code LibLoader.downloadThreads} downloads run at once, so only a bounded number of connections are open.
+ * Bytes are written to a {@code .part} file and hashed as they arrive. Interrupted downloads resume from the end of the
+ * {@code .part} file with an HTTP Range request, and failed attempts are retried with exponential backoff.
+ */
+final class Downloader {
+	private static final Logger log = LogManager.getLogger("LibLoader");
+	private static final int THREADS = Integer.parseInt(System.getProperty("LibLoader.downloadThreads", "4"));
+	private static final int RETRIES = Integer.parseInt(System.getProperty("LibLoader.downloadRetries", "3"));
+	private static final int TIMEOUT = Integer.parseInt(System.getProperty("LibLoader.downloadTimeout", "10000"));
+	private static final long BACKOFF = 500;
+	private static final long PROGRESS_INTERVAL = 5000;
+	private static final Semaphore connections = new Semaphore(THREADS);
+
+	private Downloader() {
+	}
+
+	/**
+	 * Downloads the URL to the given {@code .part} file, resuming from its current contents if it already exists
+	 *
+	 * @param expectedHash when a resumed download does not match this hash it is restarted once from scratch
+	 * @return hex encoded SHA-512 of the whole {@code .part} file
+	 */
+	@SneakyThrows
+	static String download(URL url, File part, String expectedHash) {
+		IOException lastException = null;
+		for (int attempt = 0; attempt <= RETRIES; attempt++) {
+			if (attempt > 0) {
+				long backoff = BACKOFF << (attempt - 1);
+				log.warn("Retrying download of " + url + " in " + backoff + "ms, attempt " + (attempt + 1) + '/' + (RETRIES + 1), lastException);
+				Thread.sleep(backoff);
+			}
+			connections.acquire();
+			try (val timer = Timings.DOWNLOAD.start()) {
+				val hash = attempt(url, part, expectedHash, timer);
+				timer.add(1, 0);
+				return hash;
+			} catch (IOException e) {
+				lastException = e;
+			} finally {
+				connections.release();
+			}
+		}
+		throw lastException;
+	}
+
+	/**
+	 * @param expectedHash if not null, and a download resumed from the {@code .part} file does not match it, the
+	 *                     download is immediately restarted from scratch
+	 */
+	private static String attempt(URL url, File part, String expectedHash, Timings.Timer timer) throws IOException {
+		val digest = Sha512.newDigest();
+		long offset = part.length();
+		val connection = url.openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		if (offset > 0)
+			connection.setRequestProperty("Range", "bytes=" + offset + '-');
+
+		if (connection instanceof HttpURLConnection) {
+			val code = ((HttpURLConnection) connection).getResponseCode();
+			if (code == 416) {
+				// our .part file is not a prefix of what the server has, start over
+				((HttpURLConnection) connection).disconnect();
+				Files.deleteIfExists(part.toPath());
+				throw new IOException("Server rejected resuming " + url + " from " + offset + " bytes");
+			}
+			if (code >= 400)
+				throw new IOException("Server returned HTTP " + code + " for " + url);
+			// the server ignored the Range header and sent the whole file
+			if (code != 206)
+				offset = 0;
+		} else {
+			offset = 0;
+		}
+
+		val total = connection.getContentLengthLong() < 0 ? -1 : connection.getContentLengthLong() + offset;
+		try (val in = Channels.newChannel(connection.getInputStream());
+			 val out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if (offset > 0) {
+				// hash what we already have, leaving the channel positioned at its end
+				Sha512.update(digest, out);
+				log.info("Resuming download of " + url + " from " + offset + " bytes");
+			}
+			out.truncate(offset);
+			try {
+				transfer(url, in, out, digest, offset, total);
+			} finally {
+				timer.add(0, out.size() - offset);
+			}
+		}
+		val hash = Sha512.toHex(digest.digest());
+		if (offset > 0 && expectedHash != null && !hash.equals(expectedHash)) {
+			log.warn("Resumed download of " + url + " has the wrong hash, restarting from scratch");
+			Files.deleteIfExists(part.toPath());
+			return attempt(url, part, null, timer);
+		}
+		return hash;
+	}
+
+	private static void transfer(URL url, ReadableByteChannel in, FileChannel out, MessageDigest digest, long written, long total) throws IOException {
+		val buffer = ByteBuffer.allocateDirect(1 << 16);
+		long lastProgress = System.currentTimeMillis();
+		while (in.read(buffer) != -1) {
+			buffer.flip();
+			buffer.mark();
+			digest.update(buffer);
+			buffer.reset();
+			while (buffer.hasRemaining())
+				written += out.write(buffer);
+			buffer.clear();
+
+			val now = System.currentTimeMillis();
+			if (now - lastProgress > PROGRESS_INTERVAL) {
+				lastProgress = now;
+				log.info("Downloading " + url + ": " + (written >> 10) + "KiB" + (total < 0 ? "" : " of " + (total >> 10) + "KiB"));
+			}
+		}
+		if (total >= 0 && written != total)
+			throw new EOFException("Download of " + url + " ended after " + written + " of " + total + " bytes");
+	}
+}
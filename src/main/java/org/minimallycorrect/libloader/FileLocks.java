@@ -0,0 +1,72 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Locks shared by every thread and process using the same folder, so a libraries folder can be used by many servers
+ * at once
+ * <p>
+ * Each key locks one byte of a single lock file in the folder, at a position given by the key's hash, so there is no
+ * lock file per library to clean up. Keys with the same hash share a lock, which only costs some waiting. File locks
+ * are held by the whole JVM, so threads in this JVM first take a lock of their own for the same position. Locks are
+ * reentrant. The lock file channel is never closed, as on some platforms closing any channel to a file releases
+ * every lock this JVM holds on it.
+ */
+final class FileLocks {
+	private static final Logger log = LogManager.getLogger("LibLoader");
+	private static final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<File, FileChannel> channels = new ConcurrentHashMap<>();
+
+	private FileLocks() {
+	}
+
+	/**
+	 * Runs the action while holding the lock for the key in the given folder
+	 */
+	@SneakyThrows
+	static <T> T locked(File dir, String key, Callable<T> action) {
+		val lockFile = new File(dir, "libloader locks").getAbsoluteFile();
+		val position = (long) (key.hashCode() & Integer.MAX_VALUE);
+		val lock = locks.computeIfAbsent(lockFile.getPath() + '#' + position, k -> new ReentrantLock());
+		lock.lock();
+		try {
+			if (lock.getHoldCount() > 1)
+				return action.call();
+			val channel = channels.computeIfAbsent(lockFile, FileLocks::open);
+			FileLock fileLock = channel.tryLock(position, 1, false);
+			if (fileLock == null) {
+				log.debug("Waiting for another process to finish with '" + key + '\'');
+				// blocking file locks are held per process, so threads in two processes each waiting for a lock the
+				// other process holds are reported as a deadlock, even though neither thread holds anything
+				long wait = 10;
+				while ((fileLock = channel.tryLock(position, 1, false)) == null) {
+					Thread.sleep(wait);
+					wait = Math.min(wait * 2, 100);
+				}
+			}
+			try {
+				return action.call();
+			} finally {
+				fileLock.release();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@SneakyThrows
+	private static FileChannel open(File lockFile) {
+		//noinspection ResultOfMethodCallIgnored
+		lockFile.getParentFile().mkdirs();
+		return FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+}
@@ -0,0 +1,39 @@
+package org.minimallycorrect.libloader;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.concurrent.*;
+
+/**
+ * Path, modification time in seconds and size of a file, which change whenever the file does
+ * <p>
+ * Keys the indexes of the inner side. {@link LibLoader} has its own copy, as the classes of an older outer jar may be
+ * the ones loaded
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+final class FileState {
+	final String path;
+	final long time;
+	final long size;
+
+	FileState(Path f, BasicFileAttributes attributes) {
+		path = f.toString();
+		time = attributes.lastModifiedTime().to(TimeUnit.SECONDS);
+		size = attributes.size();
+	}
+
+	static FileState read(DataInput in) throws IOException {
+		return new FileState(in.readUTF(), in.readLong(), in.readLong());
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeUTF(path);
+		out.writeLong(time);
+		out.writeLong(size);
+	}
+}
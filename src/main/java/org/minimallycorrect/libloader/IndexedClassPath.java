@@ -0,0 +1,213 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+import sun.misc.Resource;
+import sun.misc.URLClassPath;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.jar.*;
+
+/**
+ * Class path which only probes the library jars that contain the requested package
+ * <p>
+ * Replaces the class path of a {@link URLClassLoader}. Lookups search the URLs the class loader had before, then
+ * the libraries which contain the package according to the {@link PackageIndex}, then any URLs added afterwards,
+ * matching the order they would have had if the libraries were added with addURL. A lookup for a package no library
+ * contains never opens a library jar. As this replaces a JDK internal field, it is only used if
+ * {@code LibLoader.indexClassPath} is set.
+ * <p>
+ * Libraries are mounted all at once when installed, or lazily if {@code LibLoader.lazyMount} is set, when a package
+ * they contain is first looked up. Only mounted libraries are listed by getURLs, always in the order the libraries
+ * were given, and each is reported to the class loader when mounted, so that libraries no mod uses are never
+ * opened or scanned. A lookup of a resource under META-INF mounts every library with that folder.
+ */
+final class IndexedClassPath extends URLClassPath {
+	private final URL[] libraryUrls;
+	private final AtomicReferenceArray<URLClassPath> mounted;
+	private final Map<String, int[]> byPackage;
+	private final Consumer<URL> onMount;
+	private final URLClassPath after = new URLClassPath(new URL[0]);
+
+	private IndexedClassPath(URL[] before, List<File> libs, Map<String, List<File>> packages, Consumer<URL> onMount) throws IOException {
+		super(before);
+		this.onMount = onMount;
+		libraryUrls = new URL[libs.size()];
+		mounted = new AtomicReferenceArray<>(libs.size());
+		val indexes = new HashMap<File, Integer>();
+		for (int i = 0; i < libs.size(); i++) {
+			libraryUrls[i] = libs.get(i).toURI().toURL();
+			indexes.put(libs.get(i), i);
+		}
+		byPackage = new HashMap<>(packages.size() * 2);
+		for (val entry : packages.entrySet()) {
+			val jars = entry.getValue();
+			val forPackage = new int[jars.size()];
+			for (int i = 0; i < forPackage.length; i++)
+				forPackage[i] = indexes.get(jars.get(i));
+			byPackage.put(entry.getKey(), forPackage);
+		}
+	}
+
+	/**
+	 * Replaces the class loader's class path with one which also searches the given libraries
+	 *
+	 * @param lazy    whether to mount each library on the first lookup of a package it contains
+	 * @param onMount called with the URL of each library as it is mounted
+	 * @return false if the class path could not be replaced, in which case the libraries must be added with addURL
+	 */
+	static boolean install(URLClassLoader classLoader, List<File> libs, Map<String, List<File>> packages, boolean lazy, Consumer<URL> onMount) {
+		try {
+			val ucpField = URLClassLoader.class.getDeclaredField("ucp");
+			ucpField.setAccessible(true);
+			val oldUcp = (URLClassPath) ucpField.get(classLoader);
+			val indexed = new IndexedClassPath(classLoader.getURLs(), libs, packages, onMount);
+			// everything needed to look up a class must be loaded before this is used to load classes
+			indexed.getResource(IndexedClassPath.class.getName().replace('.', '/') + ".class", false);
+			if (!lazy) {
+				for (int i = 0; i < libs.size(); i++)
+					indexed.mounted.set(i, new URLClassPath(new URL[]{indexed.libraryUrls[i]}));
+				indexed.findResource(JarFile.MANIFEST_NAME, true);
+			}
+			ucpField.set(classLoader, indexed);
+			oldUcp.closeLoaders();
+			if (!lazy)
+				for (val url : indexed.libraryUrls)
+					onMount.accept(url);
+			return true;
+		} catch (Throwable t) {
+			LibLoaderChained.log.warn("Failed to install indexed class path, falling back to addURL", t);
+			return false;
+		}
+	}
+
+	/**
+	 * @return indexes of the libraries containing the name's package, or null if none do
+	 */
+	private int[] forName(String name) {
+		return byPackage.get(PackageIndex.getPackage(name));
+	}
+
+	private URLClassPath mount(int index) {
+		val classPath = mounted.get(index);
+		if (classPath != null)
+			return classPath;
+		synchronized (this) {
+			if (mounted.get(index) == null) {
+				mounted.set(index, new URLClassPath(new URL[]{libraryUrls[index]}));
+				onMount.accept(libraryUrls[index]);
+			}
+			return mounted.get(index);
+		}
+	}
+
+	@Override
+	public synchronized void addURL(URL url) {
+		after.addURL(url);
+	}
+
+	@Override
+	public URL[] getURLs() {
+		val urls = new ArrayList<URL>(Arrays.asList(super.getURLs()));
+		for (int i = 0; i < libraryUrls.length; i++)
+			if (mounted.get(i) != null)
+				urls.add(libraryUrls[i]);
+		urls.addAll(Arrays.asList(after.getURLs()));
+		return urls.toArray(new URL[0]);
+	}
+
+	@Override
+	public URL findResource(String name, boolean check) {
+		URL url = super.findResource(name, check);
+		if (url != null)
+			return url;
+		val indexes = forName(name);
+		if (indexes != null)
+			for (val index : indexes)
+				if ((url = mount(index).findResource(name, check)) != null)
+					return url;
+		return after.findResource(name, check);
+	}
+
+	@Override
+	public Resource getResource(String name, boolean check) {
+		Resource resource = super.getResource(name, check);
+		if (resource != null)
+			return resource;
+		val indexes = forName(name);
+		if (indexes != null)
+			for (val index : indexes)
+				if ((resource = mount(index).getResource(name, check)) != null)
+					return resource;
+		return after.getResource(name, check);
+	}
+
+	@Override
+	public Enumeration<URL> findResources(String name, boolean check) {
+		val found = new ArrayList<Enumeration<URL>>();
+		found.add(super.findResources(name, check));
+		val indexes = forName(name);
+		if (indexes != null)
+			for (val index : indexes)
+				found.add(mount(index).findResources(name, check));
+		found.add(after.findResources(name, check));
+		return new Concatenation<>(found);
+	}
+
+	@Override
+	public Enumeration<Resource> getResources(String name, boolean check) {
+		val found = new ArrayList<Enumeration<Resource>>();
+		found.add(super.getResources(name, check));
+		val indexes = forName(name);
+		if (indexes != null)
+			for (val index : indexes)
+				found.add(mount(index).getResources(name, check));
+		found.add(after.getResources(name, check));
+		return new Concatenation<>(found);
+	}
+
+	@Override
+	public synchronized List<IOException> closeLoaders() {
+		val errors = new ArrayList<IOException>();
+		addAll(errors, super.closeLoaders());
+		for (int i = 0; i < mounted.length(); i++)
+			if (mounted.get(i) != null)
+				addAll(errors, mounted.get(i).closeLoaders());
+		addAll(errors, after.closeLoaders());
+		return errors;
+	}
+
+	private static void addAll(List<IOException> errors, List<IOException> add) {
+		if (add != null)
+			errors.addAll(add);
+	}
+
+	private static final class Concatenation<T> implements Enumeration<T> {
+		private final Iterator<Enumeration<T>> parts;
+		private Enumeration<T> current;
+
+		Concatenation(List<Enumeration<T>> parts) {
+			this.parts = parts.iterator();
+		}
+
+		@Override
+		public boolean hasMoreElements() {
+			while (current == null || !current.hasMoreElements()) {
+				if (!parts.hasNext())
+					return false;
+				current = parts.next();
+			}
+			return true;
+		}
+
+		@Override
+		public T nextElement() {
+			if (!hasMoreElements())
+				throw new NoSuchElementException();
+			return current.nextElement();
+		}
+	}
+}
@@ -11,15 +11,27 @@ import sun.misc.URLClassPath;
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
 import java.nio.charset.*;
 import java.nio.file.*;
+import java.nio.file.attribute.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
+import java.util.zip.*;
 
 @IFMLLoadingPlugin.Name("LibLoader")
 public class LibLoader implements IFMLLoadingPlugin {
 	private static final Logger log = LogManager.getLogger("LibLoader");
 	private static final AtomicBoolean inited = new AtomicBoolean();
+	private static final int STATE_MAGIC = 0x4C4C4D53;
+	private static final int STATE_VERSION = 1;
+	private static final int VERSION_INDEX_MAGIC = 0x4C4C5649;
+	private static final int VERSION_INDEX_VERSION = 1;
+	private static final ForkJoinPool IO = createIoPool();
+	private static final Timing SCAN = new Timing("scan");
+	private static final Timing STATE = new Timing("state");
+	private static final Timing SELF_UPDATE = new Timing("selfUpdate");
 
 	public LibLoader() {
 		init();
@@ -32,28 +44,109 @@ public class LibLoader implements IFMLLoadingPlugin {
 
 		val mods = new File(System.getProperty("LibLoader.modsFolder", "mods/"));
 		val libraries = new File(System.getProperty("LibLoader.librariesFolder", "libraries/"));
-		val state = new File(libraries, "libloader mod state.obj");
 		val libLoaderJar = new File(mods, System.getProperty("LibLoader.coreModJar", "# LibLoader.jar"));
+
+		val anyChanges = checkForChanges(mods, libraries, libLoaderJar, true);
+		if (anyChanges == null)
+			return;
+
+		launch(anyChanges);
+	}
+
+	/**
+	 * Scans the mods folder and compares it to the last start, updating LibLoader itself if anything changed and a
+	 * newer version is embedded in one of the mods
+	 * <p>
+	 * The mod state is saved before any self update, so does not include an updated LibLoader jar
+	 *
+	 * @param updateClassLoader whether a self update also swaps the LibLoader jar in the class loader. Off when
+	 *                          provisioning outside of Forge
+	 * @return whether anything changed, or null if LibLoader removed itself
+	 */
+	static Boolean checkForChanges(File mods, File libraries, File libLoaderJar, boolean updateClassLoader) {
+		val state = instanceFile(libraries, mods, "libloader mod state.obj");
+		val versionIndex = instanceFile(libraries, mods, "libloader version index.bin");
 		val tempDeleteMe = new File(libLoaderJar.getParentFile(), libLoaderJar.getName() + "-delete-me.tmp");
 		delete(tempDeleteMe);
+		// from before state was kept per mods folder, and in a format which is no longer read
+		delete(new File(libraries, "libloader mod state.obj"));
+
+		val newStates = scan(mods);
+		boolean anyChanges;
+		try (val timer = STATE.start()) {
+			List<FileState> lastStates = readStates(state);
+			saveStates(newStates, state);
+			timer.add(1, state.length());
+			anyChanges = !libLoaderJar.exists() || !Objects.equals(newStates, lastStates);
+		}
 
-		List<FileState> lastStates = LibLoader.readFromFile(state);
-		List<FileState> newStates = new ArrayList<>();
-		search(newStates, mods, 0);
-		saveToFile(newStates, state);
-
-		val anyChanges = !libLoaderJar.exists() || !Objects.equals(newStates, lastStates);
 		if (anyChanges) {
-			if (checkForNewerLibLoader(mods, libLoaderJar, tempDeleteMe)) {
+			if (checkForNewerLibLoader(mods, newStates, versionIndex, libLoaderJar, tempDeleteMe, updateClassLoader)) {
 				delete(state);
 				delete(libLoaderJar);
 				delete(tempDeleteMe);
-				return;
+				return null;
 			}
 		}
+		// the inner jar's timings include these phases, which are passed as a property as its classes may be another version
+		System.setProperty("LibLoader.timings", SCAN + ";" + STATE + ";" + SELF_UPDATE);
+		return anyChanges;
+	}
 
-		launch(anyChanges);
-		saveToFile(newStates, state);
+	/**
+	 * Saves the current state of the mods folder, so the next start finds nothing changed
+	 */
+	static void saveModState(File mods, File libraries) {
+		saveStates(scan(mods), instanceFile(libraries, mods, "libloader mod state.obj"));
+	}
+
+	private static List<FileState> scan(File mods) {
+		try (val timer = SCAN.start()) {
+			val states = search(mods);
+			for (val fileState : states)
+				timer.add(1, fileState.size);
+			return states;
+		}
+	}
+
+	/**
+	 * State describing a mods folder is kept per mods folder, so several instances can share one libraries folder
+	 * <p>
+	 * Same naming as {@link LibLoaderChained#instanceFile}, which is not called from here as an older or newer
+	 * LibLoaderChained may be the one loaded
+	 */
+	@SneakyThrows
+	private static File instanceFile(File libraries, File mods, String name) {
+		val id = String.format("%08x", mods.getCanonicalPath().hashCode());
+		val extension = name.lastIndexOf('.');
+		return new File(libraries, name.substring(0, extension) + ' ' + id + name.substring(extension));
+	}
+
+	/**
+	 * Runs the task on LibLoader's own I/O pool, so scanning never competes with the game for the common pool
+	 * <p>
+	 * Sized by {@code LibLoader.ioThreads} like the inner jar's pool, but separate from it as the outer and inner jar
+	 * may be different versions
+	 */
+	@SneakyThrows
+	private static <T> T io(Callable<T> task) {
+		try {
+			return IO.submit(task).get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static ForkJoinPool createIoPool() {
+		val cores = Runtime.getRuntime().availableProcessors();
+		val threads = Integer.parseInt(System.getProperty("LibLoader.ioThreads", String.valueOf(Math.max(4, cores * 2))));
+		val count = new AtomicInteger();
+		return new ForkJoinPool(Math.max(1, threads), pool -> {
+			val thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("LibLoader scan #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
 	}
 
 	private static void delete(File f) {
@@ -67,39 +160,35 @@ public class LibLoader implements IFMLLoadingPlugin {
 	}
 
 	@SneakyThrows
-	private static boolean checkForNewerLibLoader(File mods, File libLoaderJar, File tempDeleteMe) {
-		val files = mods.listFiles();
-		if (files == null)
+	private static boolean checkForNewerLibLoader(File mods, List<FileState> states, File versionIndex, File libLoaderJar, File tempDeleteMe, boolean updateClassLoader) {
+		if (!mods.isDirectory())
 			throw new FileNotFoundException(mods.getAbsolutePath());
 
 		Version currentVersion = null;
 		Version bestVersion = null;
 		File bestFile = null;
-		for (File file : files) {
-			val name = file.getName().toLowerCase();
-			if (!name.endsWith(".jar") && !name.endsWith(".zip"))
+		for (val entry : probeEmbeddedVersions(mods, states, versionIndex).entrySet()) {
+			val file = new File(entry.getKey().path);
+			val embedded = entry.getValue();
+			if (embedded.version == null)
 				continue;
 
-			try (val fs = FileSystems.newFileSystem(file.toPath(), null)) {
-				try {
-					val version = new Version(new String(Files.readAllBytes(fs.getPath("LibLoader.version")), Charset.forName("UTF-8")));
-					if (name.equalsIgnoreCase(libLoaderJar.getName())) {
-						currentVersion = version;
-						continue;
-					}
-					val libLoader = fs.getPath("LibLoader.jar");
-					if (!Files.exists(libLoader)) {
-						log.warn("Found LibLoader version '" + version + "' in '" + file + "' but no LibLoader.jar");
-						continue;
-					}
-					if (bestVersion == null || version.compareTo(bestVersion) > 0) {
-						bestVersion = version;
-						bestFile = file;
-					}
-				} catch (IOException ignored) {
-				} catch (Throwable t) {
-					log.error("Failed to check LibLoader version in '" + file + '\'', t);
+			try {
+				val version = new Version(embedded.version);
+				if (file.getName().equalsIgnoreCase(libLoaderJar.getName())) {
+					currentVersion = version;
+					continue;
+				}
+				if (!embedded.hasLibLoaderJar) {
+					log.warn("Found LibLoader version '" + version + "' in '" + file + "' but no LibLoader.jar");
+					continue;
+				}
+				if (bestVersion == null || version.compareTo(bestVersion) > 0) {
+					bestVersion = version;
+					bestFile = file;
 				}
+			} catch (Throwable t) {
+				log.error("Failed to check LibLoader version in '" + file + '\'', t);
 			}
 		}
 
@@ -112,7 +201,8 @@ public class LibLoader implements IFMLLoadingPlugin {
 		}
 
 		if (delete) {
-			changeClassLoaderUrls(libLoaderJar, true);
+			if (updateClassLoader)
+				changeClassLoaderUrls(libLoaderJar, true);
 			Files.move(libLoaderJar.toPath(), tempDeleteMe.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 			delete(tempDeleteMe);
 		}
@@ -122,12 +212,67 @@ public class LibLoader implements IFMLLoadingPlugin {
 				val libLoader = fs.getPath("LibLoader.jar");
 				Files.copy(libLoader, libLoaderJar.toPath());
 			}
-			changeClassLoaderUrls(libLoaderJar, false);
+			if (updateClassLoader)
+				changeClassLoaderUrls(libLoaderJar, false);
 		}
 
 		return delete && bestVersion == null;
 	}
 
+	/**
+	 * Finds the LibLoader version embedded in each jar or zip directly inside the mods folder
+	 * <p>
+	 * Results are kept in an index keyed by {@link FileState}, so only new or changed jars are opened. Those are
+	 * probed in parallel.
+	 */
+	@SneakyThrows
+	static Map<FileState, EmbeddedVersion> probeEmbeddedVersions(File mods, List<FileState> states, File versionIndex) {
+		val modsPath = mods.getCanonicalFile().toPath();
+		Map<FileState, EmbeddedVersion> lastIndex = readVersionIndex(versionIndex);
+		val last = lastIndex == null ? Collections.<FileState, EmbeddedVersion>emptyMap() : lastIndex;
+		val index = new ConcurrentHashMap<FileState, EmbeddedVersion>();
+		try (val timer = SELF_UPDATE.start()) {
+			io(() -> {
+				states.parallelStream().forEach(it -> {
+					val path = Paths.get(it.path);
+					val name = path.getFileName().toString().toLowerCase();
+					if (!modsPath.equals(path.getParent()) || (!name.endsWith(".jar") && !name.endsWith(".zip")))
+						return;
+
+					val known = last.get(it);
+					if (known == null)
+						timer.add(1, it.size);
+					index.put(it, known != null ? known : EmbeddedVersion.probe(path.toFile()));
+				});
+				return null;
+			});
+		}
+		val sorted = new TreeMap<FileState, EmbeddedVersion>(Comparator.comparing(a -> a.path));
+		sorted.putAll(index);
+		saveVersionIndex(sorted, versionIndex);
+		return sorted;
+	}
+
+	private static void saveVersionIndex(Map<FileState, EmbeddedVersion> index, File f) {
+		writeState(f, VERSION_INDEX_MAGIC, VERSION_INDEX_VERSION, out -> {
+			out.writeInt(index.size());
+			for (val entry : index.entrySet()) {
+				entry.getKey().write(out);
+				entry.getValue().write(out);
+			}
+		});
+	}
+
+	private static Map<FileState, EmbeddedVersion> readVersionIndex(File f) {
+		return readState(f, VERSION_INDEX_MAGIC, VERSION_INDEX_VERSION, in -> {
+			val count = in.readInt();
+			val index = new HashMap<FileState, EmbeddedVersion>();
+			for (int i = 0; i < count; i++)
+				index.put(FileState.read(in), EmbeddedVersion.read(in));
+			return index;
+		});
+	}
+
 	@SneakyThrows
 	private static void changeClassLoaderUrls(File libLoaderJar, boolean remove) {
 		val classLoader = (URLClassLoader) LibLoader.class.getClassLoader();
@@ -148,59 +293,135 @@ public class LibLoader implements IFMLLoadingPlugin {
 		oldUcp.closeLoaders();
 	}
 
-	private static <T> void saveToFile(T toSave, File f) {
+	private static void saveStates(List<FileState> states, File f) {
+		writeState(f, STATE_MAGIC, STATE_VERSION, out -> {
+			out.writeInt(states.size());
+			for (val fileState : states)
+				fileState.write(out);
+		});
+	}
+
+	private static List<FileState> readStates(File f) {
+		return readState(f, STATE_MAGIC, STATE_VERSION, in -> {
+			val count = in.readInt();
+			val states = new ArrayList<FileState>(count);
+			for (int i = 0; i < count; i++)
+				states.add(FileState.read(in));
+			return states;
+		});
+	}
+
+	/**
+	 * Reads a file in the inner jar's state file format: magic, format version, payload length, payload, CRC32 of the
+	 * payload
+	 *
+	 * @return the state, or null if the file is missing, corrupt or of another format version
+	 */
+	private static <T> T readState(File f, int magic, int version, StateReader<T> reader) {
 		try {
-			//noinspection ResultOfMethodCallIgnored
-			f.getParentFile().mkdirs();
-			val temp = new File(f.getParentFile(), f.getName() + ".temp");
-			try (val os = new ObjectOutputStream(new FileOutputStream(temp))) {
-				os.writeObject(toSave);
+			val bytes = Files.readAllBytes(f.toPath());
+			val in = new DataInputStream(new ByteArrayInputStream(bytes));
+			if (bytes.length < 16 || in.readInt() != magic || in.readInt() != version || in.readInt() != bytes.length - 16)
+				return null;
+			val crc = new CRC32();
+			crc.update(bytes, 12, bytes.length - 16);
+			if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(bytes.length - 4)) {
+				log.warn("Ignoring corrupt state file '" + f + '\'');
+				return null;
 			}
-			Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return reader.read(in);
 		} catch (IOException ignored) {
 		} catch (Throwable t) {
-			log.error("Failed to save '" + f + '\'', t);
+			log.error("Failed to read '" + f + '\'', t);
 		}
+		return null;
 	}
 
-	@SuppressWarnings("unchecked")
-	private static <T> T readFromFile(File f) {
+	/**
+	 * Writes the state to a unique temporary file, then atomically moves it into place
+	 */
+	private static void writeState(File f, int magic, int version, StateWriter writer) {
 		try {
-			try (val is = new ObjectInputStream(new FileInputStream(f))) {
-				return (T) is.readObject();
+			val payload = new ByteArrayOutputStream();
+			writer.write(new DataOutputStream(payload));
+			val crc = new CRC32();
+			crc.update(payload.toByteArray());
+			val bytes = new ByteArrayOutputStream();
+			val out = new DataOutputStream(bytes);
+			out.writeInt(magic);
+			out.writeInt(version);
+			out.writeInt(payload.size());
+			payload.writeTo(out);
+			out.writeInt((int) crc.getValue());
+
+			//noinspection ResultOfMethodCallIgnored
+			f.getParentFile().mkdirs();
+			val temp = new File(f.getParentFile(), f.getName() + '.' + UUID.randomUUID() + ".tmp").toPath();
+			try {
+				Files.write(temp, bytes.toByteArray());
+				Files.move(temp, f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
 			}
 		} catch (IOException ignored) {
 		} catch (Throwable t) {
-			log.error("Failed to read '" + f + '\'', t);
+			log.error("Failed to save '" + f + '\'', t);
 		}
-		return null;
+	}
+
+	private interface StateReader<T> {
+		T read(DataInput in) throws IOException;
+	}
+
+	private interface StateWriter {
+		void write(DataOutput out) throws IOException;
 	}
 
 	@SneakyThrows
-	private static void search(List<FileState> fileStates, File directory, int depth) {
+	static List<FileState> search(File directory) {
+		val root = directory.getCanonicalFile().toPath();
+		val fileStates = Collections.synchronizedList(new ArrayList<FileState>());
+		io(() -> {
+			search(fileStates, root, 0);
+			return null;
+		});
+		fileStates.sort(Comparator.comparing(a -> a.path));
+		return fileStates;
+	}
+
+	/**
+	 * Reads the attributes of each entry once, and searches subdirectories in parallel
+	 */
+	@SneakyThrows
+	private static void search(List<FileState> fileStates, Path directory, int depth) {
 		if (depth > 20) {
 			throw new IllegalArgumentException(directory + " depth too high: " + depth);
 		}
 
-		val files = directory.listFiles();
-		if (files == null)
-			throw new IOException(directory + " is not a directory");
-
-		for (val f : files) {
-			val name = f.getName();
-			val lName = name.toLowerCase();
-			if (f.isDirectory()) {
-				if (depth == 0 && !("mods".equals(lName) || "libraries".equals(lName)))
+		val subdirectories = new ArrayList<Path>();
+		try (val entries = Files.newDirectoryStream(directory)) {
+			for (val f : entries) {
+				val lName = f.getFileName().toString().toLowerCase();
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(f, BasicFileAttributes.class);
+				} catch (NoSuchFileException ignored) {
+					// broken symlink or deleted while searching
 					continue;
-				search(fileStates, f, depth + 1);
-				continue;
-			}
+				}
+				if (attributes.isDirectory()) {
+					if (depth == 0 && !("mods".equals(lName) || "libraries".equals(lName)))
+						continue;
+					subdirectories.add(f);
+					continue;
+				}
 
-			if (lName.endsWith(".jar") || lName.endsWith(".jlib") || lName.endsWith(".zip"))
-				fileStates.add(new FileState(f));
+				if (lName.endsWith(".jar") || lName.endsWith(".jlib") || lName.endsWith(".zip"))
+					fileStates.add(new FileState(f, attributes));
+			}
 		}
 
-		fileStates.sort(Comparator.comparing(a -> a.path));
+		subdirectories.parallelStream().forEach(it -> search(fileStates, it, depth + 1));
 	}
 
 	@Override
@@ -229,21 +450,128 @@ public class LibLoader implements IFMLLoadingPlugin {
 
 	@AllArgsConstructor
 	@EqualsAndHashCode
-	private static class FileState implements Serializable {
+	private static class FileState {
 		private String path;
 		private long time;
 		private long size;
 
-		@SneakyThrows
-		FileState(File f) {
-			path = f.getCanonicalPath();
-			time = f.lastModified() / 1000L;
-			size = f.length();
+		FileState(Path f, BasicFileAttributes attributes) {
+			path = f.toString();
+			time = attributes.lastModifiedTime().to(TimeUnit.SECONDS);
+			size = attributes.size();
+		}
+
+		static FileState read(DataInput in) throws IOException {
+			return new FileState(in.readUTF(), in.readLong(), in.readLong());
+		}
+
+		void write(DataOutput out) throws IOException {
+			out.writeUTF(path);
+			out.writeLong(time);
+			out.writeLong(size);
+		}
+	}
+
+	/**
+	 * Time spent in a phase of {@link #checkForChanges}, and how many files and bytes it handled
+	 * <p>
+	 * Phases here run one at a time, so each keeps the start of its current run itself. Written as
+	 * {@code name:start:end:nanos:count:files:bytes}, with start and end in epoch milliseconds.
+	 */
+	private static final class Timing implements AutoCloseable {
+		private final String name;
+		private final AtomicLong start = new AtomicLong(Long.MAX_VALUE);
+		private final AtomicLong end = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private long startNanos;
+
+		Timing(String name) {
+			this.name = name;
+		}
+
+		Timing start() {
+			start.accumulateAndGet(System.currentTimeMillis(), Math::min);
+			startNanos = System.nanoTime();
+			return this;
+		}
+
+		void add(long files, long bytes) {
+			this.files.addAndGet(files);
+			this.bytes.addAndGet(bytes);
+		}
+
+		@Override
+		public void close() {
+			nanos.addAndGet(System.nanoTime() - startNanos);
+			count.incrementAndGet();
+			end.accumulateAndGet(System.currentTimeMillis(), Math::max);
+		}
+
+		@Override
+		public String toString() {
+			return name + ':' + start + ':' + end + ':' + nanos + ':' + count + ':' + files + ':' + bytes;
+		}
+	}
+
+	/**
+	 * LibLoader version embedded in a mod jar, if any, and whether it also contains a LibLoader.jar
+	 */
+	@AllArgsConstructor
+	static class EmbeddedVersion {
+		private static final EmbeddedVersion NONE = new EmbeddedVersion(null, false);
+		final String version;
+		final boolean hasLibLoaderJar;
+
+		static EmbeddedVersion probe(File file) {
+			try (val zip = new ZipFile(file)) {
+				val versionEntry = zip.getEntry("LibLoader.version");
+				if (versionEntry == null)
+					return NONE;
+				String version;
+				try (val is = zip.getInputStream(versionEntry)) {
+					version = new String(readFully(is), Charset.forName("UTF-8"));
+				}
+				return new EmbeddedVersion(version, zip.getEntry("LibLoader.jar") != null);
+			} catch (IOException ignored) {
+			} catch (Throwable t) {
+				log.error("Failed to check LibLoader version in '" + file + '\'', t);
+			}
+			return NONE;
+		}
+
+		private static byte[] readFully(InputStream is) throws IOException {
+			val out = new ByteArrayOutputStream();
+			val buffer = new byte[256];
+			int read;
+			while ((read = is.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return out.toByteArray();
+		}
+
+		static EmbeddedVersion read(DataInput in) throws IOException {
+			if (!in.readBoolean())
+				return NONE;
+			return new EmbeddedVersion(in.readUTF(), in.readBoolean());
+		}
+
+		void write(DataOutput out) throws IOException {
+			out.writeBoolean(version != null);
+			if (version != null) {
+				out.writeUTF(version);
+				out.writeBoolean(hasLibLoaderJar);
+			}
 		}
 	}
 
+	/**
+	 * Kept apart from the resolver's {@link org.minimallycorrect.libloader.Version}, so LibLoader does not depend on
+	 * classes of the inner jar
+	 */
 	@SuppressWarnings("Duplicates")
-	static class Version implements Comparable<Version> {
+	private static class Version implements Comparable<Version> {
 		final int[] parts;
 		final String suffix;
 
@@ -293,6 +621,8 @@ public class LibLoader implements IFMLLoadingPlugin {
 				return s;
 			if (a == null)
 				return -1;
+			if (b == null)
+				return 1;
 			return a.compareTo(b);
 		}
 
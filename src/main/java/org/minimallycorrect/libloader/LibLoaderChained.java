@@ -11,7 +11,6 @@ import java.io.*;
 import java.net.*;
 import java.nio.charset.*;
 import java.nio.file.*;
-import java.security.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
@@ -22,6 +21,11 @@ import java.util.zip.*;
 public class LibLoaderChained {
 	static final Logger log = LogManager.getLogger("LibLoader");
 	static final boolean DISABLE_VALIDATION = Boolean.parseBoolean(System.getProperty("LibLoader.disableValidation", "false"));
+	static final boolean CONTENT_ADDRESSED = Boolean.parseBoolean(System.getProperty("LibLoader.contentAddressed", "false"));
+	static final boolean MERGE_LIBRARIES = Boolean.parseBoolean(System.getProperty("LibLoader.mergeLibraries", "false"));
+	static final boolean REPACK_STORED = Boolean.parseBoolean(System.getProperty("LibLoader.repackStored", "false"));
+	static final boolean INDEX_CLASS_PATH = Boolean.parseBoolean(System.getProperty("LibLoader.indexClassPath", "false"));
+	static final boolean LAZY_MOUNT = Boolean.parseBoolean(System.getProperty("LibLoader.lazyMount", "false"));
 	static final AtomicBoolean inited = new AtomicBoolean();
 
 	/**
@@ -29,7 +33,6 @@ public class LibLoaderChained {
 	 * <p>
 	 * Recommended to call in a static { } block at the top of a CoreMod
 	 */
-	@SneakyThrows
 	public static void init() {
 		if (!inited.compareAndSet(false, true))
 			return;
@@ -37,44 +40,16 @@ public class LibLoaderChained {
 		val mods = new File(System.getProperty("LibLoader.modsFolder", "mods/"));
 		val libraries = new File(System.getProperty("LibLoader.librariesFolder", "libraries/"));
 
-		val cachedLibsFile = new File(libraries, "libloader cached libs.txt");
-		List<File> libs = null;
-		if (!Boolean.parseBoolean(System.getProperty("LibLoader.anyChanges", "true"))) {
-			libs = loadCachedLibs(cachedLibsFile);
-		}
-
-		if (libs == null) {
-			val files = mods.listFiles();
-			if (files == null)
-				throw new FileNotFoundException(mods.getAbsolutePath());
-
-			List<File> searchFiles = Collections.synchronizedList(new ArrayList<>(Arrays.asList(files)));
-
-			val newLibs = new ConcurrentHashMap<String, Library>();
-			val allLibs = new ConcurrentHashMap<String, Library>();
-			while (true) {
-				newLibs.clear();
-				searchFiles.parallelStream().forEach(it -> {
-					if (!it.getName().toLowerCase().endsWith(".jar")) {
-						return;
-					}
-					loadLibraries(it, allLibs, newLibs);
-				});
-
-				if (newLibs.isEmpty())
-					break;
-
-				searchFiles.clear();
-				newLibs.values().parallelStream().forEach(lib -> searchFiles.add(lib.save(libraries)));
-			}
-
-			log.info("Found libs:\n" + allLibs.values().toString().replace(", ", "\n"));
-			Map<String, File> hashToFile = new ConcurrentHashMap<>();
-			allLibs.values().parallelStream().forEach(lib -> hashToFile.put(lib.sha512hash, lib.getFile(libraries)));
-			libs = new ArrayList<>(hashToFile.values());
-			libs.sort(Comparator.comparing(File::getPath));
+		try {
+			addLibraries(mods, libraries);
+		} finally {
+			Timings.write(instanceFile(libraries, mods, "libloader timings.json"));
 		}
+	}
 
+	@SneakyThrows
+	private static void addLibraries(File mods, File libraries) {
+		val libs = loadLibraries(mods, libraries, Boolean.parseBoolean(System.getProperty("LibLoader.anyChanges", "true")));
 		if (libs.isEmpty())
 			return;
 
@@ -83,10 +58,77 @@ public class LibLoaderChained {
 		// expect 2, forge and # LibLoader.
 		if (currentUrls.size() != 2)
 			log.info("Current LaunchClassLoader URLs:\n" + currentUrls.toString().replace(", ", "\n"));
-		for (File lib : libs) {
-			classLoader.addURL(lib.toURI().toURL());
+		val packages = INDEX_CLASS_PATH ? PackageIndex.build(libs, instanceFile(libraries, mods, "libloader package index.bin")) : null;
+		try (val timer = Timings.CLASSPATH.start()) {
+			// LaunchClassLoader.addURL also records sources, which are used to find mods
+			if (packages != null && IndexedClassPath.install(classLoader, libs, packages, LAZY_MOUNT, classLoader.getSources()::add)) {
+				timer.add(libs.size(), 0);
+			} else {
+				for (File lib : libs) {
+					classLoader.addURL(lib.toURI().toURL());
+					timer.add(1, lib.length());
+				}
+			}
 		}
-		saveCachedLibs(cachedLibsFile, libs);
+	}
+
+	/**
+	 * Uses the libraries cached by the last start if nothing in the mods folder changed, otherwise resolves them
+	 *
+	 * @return jar paths of all libraries, or of the merged jar and any signed libraries if libraries are merged, or of
+	 * their uncompressed copies if libraries are repacked
+	 */
+	static List<File> loadLibraries(File mods, File libraries, boolean anyChanges) {
+		val cachedLibsFile = instanceFile(libraries, mods, "libloader cached libs.txt");
+		// from before the cached libs were kept per mods folder
+		//noinspection ResultOfMethodCallIgnored
+		new File(libraries, "libloader cached libs.txt").delete();
+		val hashLedger = new File(libraries, "libloader hash ledger.bin");
+		List<File> libs = null;
+		boolean resolved = false;
+		boolean hashing;
+		val inUse = new LinkedHashSet<File>();
+		try (val gc = new LibraryGc(libraries)) {
+			if (!anyChanges) {
+				libs = loadCachedLibs(cachedLibsFile);
+			}
+
+			hashing = libs == null || MERGE_LIBRARIES || REPACK_STORED;
+			if (hashing)
+				Sha512.load(hashLedger);
+			if (libs == null) {
+				libs = resolve(mods, libraries);
+				resolved = true;
+				if (!libs.isEmpty())
+					saveCachedLibs(cachedLibsFile, libs);
+			}
+			inUse.addAll(libs);
+			if (CONTENT_ADDRESSED && hashing)
+				for (val lib : libs)
+					inUse.add(getStoreFile(libraries, Sha512.hash(lib)));
+			if (MERGE_LIBRARIES && !libs.isEmpty())
+				libs = MergedJar.merge(libs, libraries);
+			else if (REPACK_STORED)
+				libs = StoredJar.repack(libs, libraries);
+			inUse.addAll(libs);
+			gc.lease(libraries, mods, inUse);
+		}
+		if (hashing) {
+			if (LibraryGc.isEnabled())
+				LibraryGc.collect(libraries, mods, inUse, resolved);
+			Sha512.save(hashLedger);
+		}
+		return libs;
+	}
+
+	/**
+	 * State describing a mods folder is kept per mods folder, so several instances can share one libraries folder
+	 */
+	@SneakyThrows
+	static File instanceFile(File libraries, File mods, String name) {
+		val id = String.format("%08x", mods.getCanonicalPath().hashCode());
+		val extension = name.lastIndexOf('.');
+		return new File(libraries, name.substring(0, extension) + ' ' + id + name.substring(extension));
 	}
 
 	private static List<File> loadCachedLibs(File cachedLibsFile) {
@@ -108,59 +150,179 @@ public class LibLoaderChained {
 		val sb = new StringBuilder();
 		cachedLibs.forEach(it -> sb.append(it.getPath()).append('\n'));
 		try {
-			Files.write(cachedLibsFile.toPath(), sb.toString().getBytes(Charset.forName("UTF-8")), StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+			val temp = createTempFile(cachedLibsFile.toPath());
+			try {
+				Files.write(temp, sb.toString().getBytes(Charset.forName("UTF-8")));
+				Files.move(temp, cachedLibsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
 		} catch (IOException e) {
 			System.err.println("Failed to store cached libs");
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Resolves all libraries required by the jars in the mods folder, then extracts, downloads and verifies them
+	 *
+	 * @return jar paths of the resolved libraries, sorted by path
+	 */
 	@SneakyThrows
-	static void loadLibraries(File source, ConcurrentHashMap<String, Library> libraries, ConcurrentHashMap<String, Library> libraries2) {
-		try (val zis = new ZipInputStream(new FileInputStream(source))) {
-			ZipEntry e;
-			while ((e = zis.getNextEntry()) != null) {
-				if (!e.getName().equals("META-INF/MANIFEST.MF"))
-					continue;
-
-				val manifest = new Manifest(zis);
-				int i = 0;
-				val main = manifest.getMainAttributes();
-				String group;
-				while ((group = main.getValue("LibLoader-group" + i)) != null) {
-					val name = main.getValue("LibLoader-name" + i);
-					val classifier = main.getValue("LibLoader-classifier" + i);
-					val version = main.getValue("LibLoader-version" + i);
-					val sha512hash = main.getValue("LibLoader-sha512hash" + i);
-
-					// indicates requirement but not provided here. Should be provided by one of the libs we depend on
-					// TODO: can check that
-					if (sha512hash == null) {
-						i++;
-						continue;
-					}
+	static List<File> resolve(File mods, File libraries) {
+		val files = mods.listFiles();
+		if (files == null)
+			throw new FileNotFoundException(mods.getAbsolutePath());
+
+		val jars = new ArrayList<File>();
+		for (val file : files)
+			if (file.getName().toLowerCase().endsWith(".jar"))
+				jars.add(file);
+
+		val declarationsFile = instanceFile(libraries, mods, "libloader declarations.bin");
+		val cache = DeclarationCache.read(declarationsFile);
+		val resolved = new Resolver(libraries, cache).resolve(jars);
+		cache.write(declarationsFile);
+		log.info("Found libs:\n" + resolved.toString().replace(", ", "\n"));
+
+		Map<String, File> hashToFile = new HashMap<>();
+		for (val lib : resolved)
+			hashToFile.put(lib.sha512hash, lib.getFile(libraries));
+		val libs = new ArrayList<File>(hashToFile.values());
+		libs.sort(Comparator.comparing(File::getPath));
+		return libs;
+	}
+
+	/**
+	 * Reads the libraries declared by a jar, from its {@link Descriptor} if it has one, otherwise from its manifest
+	 */
+	static List<Library> readDeclarations(File jar) throws IOException {
+		try (val zip = new ZipFile(jar)) {
+			val descriptor = zip.getEntry(Descriptor.NAME);
+			if (descriptor != null) {
+				try (val is = zip.getInputStream(descriptor)) {
+					val declarations = Descriptor.read(is, jar + "!/" + Descriptor.NAME, jar);
+					if (declarations != null)
+						return declarations;
+				}
+			}
+			return readDeclarations(readManifest(zip), jar);
+		}
+	}
 
-					val url = main.getValue("LibLoader-url" + i);
-					val file = main.getValue("LibLoader-file" + i);
-					val buildTime = main.getValue("LibLoader-buildTime" + i);
-					val lib = new Library(group, name, classifier, new Version(version), sha512hash, url, file, buildTime, source);
-					//noinspection SynchronizationOnLocalVariableOrMethodParameter
-					synchronized (libraries) {
-						val oldLib = libraries.get(lib.getKey());
-						if (oldLib == null || lib.compareTo(oldLib) > 0) {
-							libraries.put(lib.getKey(), lib);
-							libraries2.put(lib.getKey(), lib);
-						}
+	/**
+	 * Reads the libraries declared by a jar embedded in another jar without extracting it, from its
+	 * {@link Descriptor} if it has one, otherwise from its manifest
+	 * <p>
+	 * The descriptor is only looked for among the META-INF entries at the start of the jar, where it is written
+	 *
+	 * @param target where the embedded jar will be saved, used as the source of its declarations
+	 */
+	static List<Library> readDeclarations(File source, String file, File target) throws IOException {
+		try (val zip = new ZipFile(source)) {
+			val entry = zip.getEntry(file);
+			if (entry == null)
+				throw new FileNotFoundException("Couldn't find '" + file + "' in '" + source + '\'');
+			try (val jis = new JarInputStream(zip.getInputStream(entry))) {
+				Manifest manifest = jis.getManifest();
+				ZipEntry e;
+				while ((e = jis.getNextEntry()) != null) {
+					if (e.getName().equals(Descriptor.NAME)) {
+						val declarations = Descriptor.read(jis, source + "!/" + file + "!/" + Descriptor.NAME, target);
+						if (declarations != null)
+							return declarations;
+					} else if (manifest == null && e.getName().equals(JarFile.MANIFEST_NAME)) {
+						// JarInputStream only finds the manifest if it is the first entry
+						manifest = new Manifest(jis);
+					} else if (manifest != null && !e.getName().startsWith("META-INF/")) {
+						break;
 					}
-					i++;
 				}
-				return;
+				return readDeclarations(manifest, target);
+			}
+		}
+	}
+
+	/**
+	 * Reads the libraries declared by LibLoader-* attributes in a manifest
+	 * <p>
+	 * Declarations without a sha512hash are requirements which should be provided by another mod or library
+	 */
+	static List<Library> readDeclarations(Manifest manifest, File source) {
+		val declarations = new ArrayList<Library>();
+		if (manifest == null)
+			return declarations;
+
+		int i = 0;
+		val main = manifest.getMainAttributes();
+		String group;
+		while ((group = main.getValue("LibLoader-group" + i)) != null) {
+			val name = main.getValue("LibLoader-name" + i);
+			val classifier = main.getValue("LibLoader-classifier" + i);
+			val version = main.getValue("LibLoader-version" + i);
+			val sha512hash = main.getValue("LibLoader-sha512hash" + i);
+			val url = main.getValue("LibLoader-url" + i);
+			val file = main.getValue("LibLoader-file" + i);
+			val buildTime = main.getValue("LibLoader-buildTime" + i);
+			declarations.add(new Library(group, name, classifier, version == null && sha512hash == null ? null : Version.of(version), sha512hash, url, file, buildTime, source));
+			i++;
+		}
+		return declarations;
+	}
+
+	/**
+	 * Content addressed store path, under which each verified library is kept once regardless of how many
+	 * coordinates it is declared under
+	 */
+	static File getStoreFile(File libraries, String sha512hash) {
+		return new File(libraries, "sha512/" + sha512hash.substring(0, 2) + '/' + sha512hash + ".jar");
+	}
+
+	/**
+	 * Creates a unique temporary file next to the target, to be moved over it once written
+	 * <p>
+	 * {@link Files#createTempFile} only lets the owner read the file. This one gets the same permissions as any other
+	 * new file, so other users sharing the libraries folder can read whatever is moved into place from it.
+	 */
+	static Path createTempFile(Path target) throws IOException {
+		return Files.createFile(target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp"));
+	}
+
+	/**
+	 * Hardlinks, or copies if hardlinks are not supported, an existing file to the target, atomically replacing it
+	 */
+	static void link(Path existing, Path target) throws IOException {
+		val temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			try {
+				Files.createLink(temp, existing);
+			} catch (UnsupportedOperationException | IOException e) {
+				Files.copy(existing, temp, StandardCopyOption.REPLACE_EXISTING);
 			}
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Looks up the manifest through the zip central directory, so only the manifest entry is ever inflated
+	 *
+	 * @return the manifest, or null if the jar has none
+	 */
+	static Manifest readManifest(ZipFile zip) throws IOException {
+		val entry = zip.getEntry(JarFile.MANIFEST_NAME);
+		if (entry == null)
+			return null;
+		try (val is = zip.getInputStream(entry)) {
+			return new Manifest(is);
 		}
 	}
 
 	@EqualsAndHashCode
 	static class Library implements Comparable<Library> {
+		private static final ConcurrentHashMap<String, String> COORDINATES = new ConcurrentHashMap<>();
+
 		final String group;
 		final String name;
 		final String classifier;
@@ -170,42 +332,63 @@ public class LibLoaderChained {
 		final String file;
 		final String buildTime;
 		transient final File source;
+		/**
+		 * Group and name, see {@link #getKey()}
+		 */
+		transient final String key;
+		/**
+		 * Build time as a number, or {@link Long#MIN_VALUE} if not declared
+		 */
+		transient final long buildTimeValue;
+		/**
+		 * Library whose jar this library was declared in, or null if declared by a mod
+		 */
+		transient Library parent;
 		transient String calculatedHash = null;
+		/**
+		 * Size of the library's jar if declared, or -1
+		 */
+		transient long size = -1;
 
 		Library(String group, String name, String classifier, Version version, String sha512hash, String url, String file, String buildTime, File source) {
-			this.group = group;
-			this.name = name;
-			this.classifier = classifier;
+			this.group = intern(group);
+			this.name = intern(name);
+			this.classifier = classifier == null ? null : intern(classifier);
 			this.version = version;
 			this.sha512hash = sha512hash;
 			this.url = url;
 			this.file = file;
 			this.buildTime = buildTime;
 			this.source = source;
+			this.key = intern(group + '.' + name);
+			this.buildTimeValue = parseBuildTime(buildTime);
 		}
 
-		@SneakyThrows
-		static String sha512(File f) {
-			val digest = MessageDigest.getInstance("SHA-512");
-			byte[] hash = digest.digest(Files.readAllBytes(f.toPath()));
-
-			val hexString = new StringBuilder();
-			//noinspection ForLoopReplaceableByForEach
-			for (int i = 0; i < hash.length; i++) {
-				String hex = Integer.toHexString(0xff & hash[i]);
-				if (hex.length() == 1) hexString.append('0');
-				hexString.append(hex);
+		/**
+		 * A malformed build time is ignored, as a library declared by one broken jar shouldn't stop the game starting
+		 */
+		private long parseBuildTime(String buildTime) {
+			if (buildTime == null)
+				return Long.MIN_VALUE;
+			try {
+				return Long.parseLong(buildTime);
+			} catch (NumberFormatException e) {
+				log.warn("Ignoring invalid build time '" + buildTime + "' for library " + this + " declared in " + source);
+				return Long.MIN_VALUE;
 			}
+		}
 
-			return hexString.toString();
+		/**
+		 * Shares the coordinates declared by many jars, so comparing the keys of the same library is usually an
+		 * identity check
+		 */
+		private static String intern(String coordinate) {
+			val existing = COORDINATES.putIfAbsent(coordinate, coordinate);
+			return existing == null ? coordinate : existing;
 		}
 
-		@SneakyThrows
-		static InputStream openStream(URL url) {
-			val con = url.openConnection();
-			con.setConnectTimeout(10000);
-			con.setReadTimeout(10000);
-			return con.getInputStream();
+		static String sha512(File f) {
+			return Sha512.hash(f);
 		}
 
 		String getPath() {
@@ -218,18 +401,27 @@ public class LibLoaderChained {
 		}
 
 		String getKey() {
-			return group + '.' + name;
+			return key;
+		}
+
+		int getDepth() {
+			return parent == null ? 0 : parent.getDepth() + 1;
+		}
+
+		Error wrongHash(String hash) {
+			return new Error("Wrong hash for library " + this + "\nExpected " + sha512hash + ", got " + hash);
 		}
 
 		@SneakyThrows
-		void validateHash(File jarPath) {
+		void validateHash(File jarPath, String hash) {
 			if (!jarPath.exists())
 				throw new FileNotFoundException("Couldn't extract/download library " + this);
-			val hash = sha512(jarPath);
+			if (hash == null)
+				hash = sha512(jarPath);
 			calculatedHash = hash;
 
 			if (!hash.equals(sha512hash)) {
-				val error = new Error("Wrong hash for library " + this + "\nExpected " + sha512hash + ", got " + hash);
+				val error = wrongHash(hash);
 				if (DISABLE_VALIDATION) {
 					error.printStackTrace();
 				} else {
@@ -238,36 +430,142 @@ public class LibLoaderChained {
 			}
 		}
 
+		/**
+		 * Only one thread or process saves each library at a time. Any others wait for it, then find the library
+		 * already saved and only verify it
+		 */
+		File save(File extractionDir, Archive archive) {
+			return FileLocks.locked(extractionDir, getPath(), () -> acquire(extractionDir, archive));
+		}
+
 		@SneakyThrows
-		File save(File extractionDir) {
+		private File acquire(File extractionDir, Archive archive) {
 			val jarPath = getFile(extractionDir);
-			if (!jarPath.exists() || (!DISABLE_VALIDATION && !sha512(jarPath).equals(sha512hash))) {
+			if (CONTENT_ADDRESSED && linkFromStore(extractionDir, jarPath))
+				return jarPath;
+
+			String hash = null;
+			// a jar of the wrong size can't have the right hash
+			if (jarPath.exists() && !DISABLE_VALIDATION)
+				hash = size >= 0 && jarPath.length() != size ? "" : sha512(jarPath);
+			if (!jarPath.exists() || (!DISABLE_VALIDATION && !hash.equals(sha512hash))) {
 				//noinspection ResultOfMethodCallIgnored
 				jarPath.getParentFile().mkdirs();
 				if (file != null) {
-					try (val zis = new ZipInputStream(new FileInputStream(source))) {
-						ZipEntry e;
-						while ((e = zis.getNextEntry()) != null) {
-							if (!e.getName().equals(file))
-								continue;
-							Files.copy(zis, jarPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
-						}
+					val zip = archive.get();
+					val entry = zip.getEntry(file);
+					if (entry == null)
+						throw new FileNotFoundException("Couldn't find '" + file + "' in '" + source + "' for library " + this);
+					try (val is = zip.getInputStream(entry)) {
+						hash = install(is, jarPath);
 					}
 				} else if (url != null) {
-					log.info("Downloading library " + toString() + " from " + url + ". Expected hash: " + sha512hash);
-					try (val is = openStream(new URL(url))) {
-						Files.copy(is, jarPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
-					}
+					hash = download(jarPath);
 				} else {
 					throw new Error("No way to acquire dependency: " + this);
 				}
 			}
 
-			validateHash(jarPath);
+			validateHash(jarPath, hash);
+			if (CONTENT_ADDRESSED && sha512hash.equals(calculatedHash))
+				addToStore(extractionDir, jarPath);
 
 			return jarPath;
 		}
 
+		File getStoreFile(File extractionDir) {
+			return LibLoaderChained.getStoreFile(extractionDir, sha512hash);
+		}
+
+		/**
+		 * Links the jar path to this library's store entry if one exists
+		 * <p>
+		 * Store entries are only created from verified jars and are named by their hash, so are not hashed again
+		 *
+		 * @return whether the library was present in the store
+		 */
+		@SneakyThrows
+		boolean linkFromStore(File extractionDir, File jarPath) {
+			val stored = getStoreFile(extractionDir);
+			if (!stored.isFile())
+				return false;
+			calculatedHash = sha512hash;
+			if (!jarPath.exists() || !Files.isSameFile(jarPath.toPath(), stored.toPath())) {
+				//noinspection ResultOfMethodCallIgnored
+				jarPath.getParentFile().mkdirs();
+				link(stored.toPath(), jarPath.toPath());
+				LibraryGc.created(jarPath);
+			}
+			// so merging, repacking and collecting the store entries in use don't hash it either
+			Sha512.remember(jarPath, sha512hash);
+			return true;
+		}
+
+		@SneakyThrows
+		void addToStore(File extractionDir, File jarPath) {
+			val stored = getStoreFile(extractionDir);
+			if (stored.exists())
+				return;
+			//noinspection ResultOfMethodCallIgnored
+			stored.getParentFile().mkdirs();
+			link(jarPath.toPath(), stored.toPath());
+			LibraryGc.created(stored);
+		}
+
+		/**
+		 * Writes the library to a temporary file next to the jar path while hashing it, then moves it into place
+		 * <p>
+		 * A crash part way through never leaves a truncated jar at the jar path
+		 */
+		@SneakyThrows
+		String install(InputStream is, File jarPath) {
+			val temp = createTempFile(jarPath.toPath());
+			try {
+				String hash;
+				try (val timer = Timings.EXTRACT.start()) {
+					hash = Sha512.copy(is, temp.toFile());
+					timer.add(1, Files.size(temp));
+				}
+				if (!hash.equals(sha512hash) && !DISABLE_VALIDATION)
+					throw wrongHash(hash);
+				Files.move(temp, jarPath.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				LibraryGc.created(jarPath);
+				Sha512.remember(jarPath, hash);
+				return hash;
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		/**
+		 * Downloads the library to a {@code .part} file next to the jar path, resuming any earlier partial download,
+		 * then moves it into place once its hash is verified
+		 * <p>
+		 * If one of the local {@link Repositories} has the library with the expected hash, it is linked or copied instead
+		 */
+		@SneakyThrows
+		String download(File jarPath) {
+			val local = Repositories.find(this);
+			if (local != null) {
+				log.info("Copying library " + toString() + " from '" + local + '\'');
+				link(local.toPath(), jarPath.toPath());
+				LibraryGc.created(jarPath);
+				Sha512.remember(jarPath, sha512hash);
+				return sha512hash;
+			}
+			log.info("Downloading library " + toString() + " from " + url + ". Expected hash: " + sha512hash);
+			val part = new File(jarPath.getParentFile(), jarPath.getName() + ".part");
+			val hash = Downloader.download(new URL(url), part, sha512hash);
+			if (!hash.equals(sha512hash) && !DISABLE_VALIDATION) {
+				Files.deleteIfExists(part.toPath());
+				throw wrongHash(hash);
+			}
+			Files.move(part.toPath(), jarPath.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LibraryGc.created(jarPath);
+			Sha512.remember(jarPath, hash);
+			return hash;
+		}
+
 		@SneakyThrows
 		File getFile(File extractionDir) {
 			return new File(extractionDir, getPath());
@@ -278,7 +576,7 @@ public class LibLoaderChained {
 			val c = version.compareTo(o.version);
 			if (c != 0)
 				return c;
-			return Long.compare(Long.parseLong(buildTime), Long.parseLong(o.buildTime));
+			return Long.compare(buildTimeValue, o.buildTimeValue);
 		}
 
 		@Override
@@ -287,90 +585,28 @@ public class LibLoaderChained {
 		}
 	}
 
-	@SuppressWarnings("Duplicates")
-	static class Version implements Comparable<Version> {
-		final int[] parts;
-		final String suffix;
-
-		Version(String version) {
-			if (version == null)
-				throw new IllegalArgumentException("Version can not be null");
-			version = version.trim();
-
-			int dash = version.indexOf('-');
-			if (dash != -1) {
-				suffix = version.substring(dash + 1).trim();
-				version = version.substring(0, dash);
-			} else {
-				suffix = null;
-			}
-
-			if (!version.matches("[0-9]+(\\.[0-9]+)*"))
-				throw new IllegalArgumentException("Invalid version format. Should consist of digits and dots with optional suffix after -. Got '" + version + "'");
-			parts = Arrays.stream(version.split("\\.")).mapToInt(Integer::parseInt).toArray();
-		}
-
-		@Override
-		public int compareTo(@SuppressWarnings("NullableProblems") Version that) {
-			if (that == null)
-				return 1;
-
-			if (this == that)
-				return 0;
-
-			int length = Math.max(parts.length, that.parts.length);
-			for (int i = 0; i < length; i++) {
-				int thisPart = i < parts.length ? parts[i] : 0;
-				int thatPart = i < that.parts.length ? that.parts[i] : 0;
-
-				if (thisPart < thatPart)
-					return -1;
-				if (thisPart > thatPart)
-					return 1;
-			}
-
-			val a = suffix;
-			val b = that.suffix;
-			if (Objects.equals(a, b))
-				return 0;
-			int s = Integer.compare(suffixInt(), that.suffixInt());
-			if (s != 0)
-				return s;
-			if (a == null)
-				return -1;
-			return a.compareTo(b);
-		}
-
-		int suffixInt() {
-			if (suffix == null)
-				return 0;
-
-			switch (suffix.toLowerCase().trim()) {
-				case "alpha":
-					return -3;
-				case "beta":
-				case "snapshot":
-					return -2;
-				case "":
-					return 0;
-				default:
-					return -1;
-			}
-		}
+	/**
+	 * Lazily opened source jar, shared by all libraries extracted from it
+	 */
+	static class Archive implements Closeable {
+		private final File file;
+		private ZipFile zip;
 
-		@Override
-		public String toString() {
-			return String.join(".", (Iterable<String>) (Arrays.stream(parts).mapToObj(String::valueOf)::iterator)) + (suffix == null ? "" : '-' + suffix);
+		Archive(File file) {
+			this.file = file;
 		}
 
-		@Override
-		public int hashCode() {
-			return toString().hashCode();
+		synchronized ZipFile get() throws IOException {
+			if (zip == null)
+				zip = new ZipFile(file);
+			return zip;
 		}
 
+		@SneakyThrows
 		@Override
-		public boolean equals(Object that) {
-			return this == that || that != null && this.getClass() == that.getClass() && this.compareTo((Version) that) == 0;
+		public synchronized void close() {
+			if (zip != null)
+				zip.close();
 		}
 	}
 }
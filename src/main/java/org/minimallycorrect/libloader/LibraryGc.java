@@ -0,0 +1,322 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.minimallycorrect.libloader.LibLoaderChained.log;
+
+/**
+ * Deletes library files which LibLoader created but no longer uses
+ * <p>
+ * The libraries folder is shared with Forge and the launcher, so only files LibLoader extracted, downloaded, linked
+ * or repacked itself are ever deleted. The libraries folder may also be shared by several instances, each with its own
+ * mods folder, so each keeps its own history of the created files it used. Each time an instance resolves its
+ * libraries it starts a new generation, and created files which were not used by any of the last
+ * {@code LibLoader.gcResolutions} generations of every instance are deleted. Nothing is collected unless that is set.
+ * An instance which is not running never advances its generations, so keeps what it used last. If
+ * {@code LibLoader.gcBudgetMiB} is also set and created files still take more space, the least recently used ones
+ * which are not currently in use are deleted until they fit.
+ * <p>
+ * Every running instance holds a lock on a lease file listing the files it uses, and nothing listed in a live lease
+ * is deleted. Instances hold a shared lock on the gc lock file from the start of loading until their lease is
+ * written, and collection only runs while holding it exclusively, so files are never deleted between being chosen
+ * and being leased.
+ */
+final class LibraryGc implements Closeable {
+	private static final int HISTORY_MAGIC = 0x4C4C4743;
+	private static final int HISTORY_VERSION = 1;
+	private static final int RESOLUTIONS = Integer.parseInt(System.getProperty("LibLoader.gcResolutions", "0"));
+	private static final long BUDGET = Long.parseLong(System.getProperty("LibLoader.gcBudgetMiB", "0")) << 20;
+	private static final long LOCK_POSITION = Long.MAX_VALUE - 1;
+	private static final Set<File> created = ConcurrentHashMap.newKeySet();
+	private static File leaseFile;
+	private static FileChannel lease;
+
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+
+	/**
+	 * Blocks until no collection is running, then prevents one starting until closed
+	 */
+	@SneakyThrows
+	LibraryGc(File libraries) {
+		//noinspection ResultOfMethodCallIgnored
+		libraries.mkdirs();
+		lockChannel = FileChannel.open(new File(libraries, "libloader gc.lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		lock = lockChannel.lock(LOCK_POSITION, 1, true);
+	}
+
+	static boolean isEnabled() {
+		return RESOLUTIONS > 0;
+	}
+
+	/**
+	 * Records that LibLoader created the file, so it may later be deleted once unused
+	 */
+	static void created(File f) {
+		created.add(f.getAbsoluteFile());
+	}
+
+	/**
+	 * Writes this instance's lease, replacing any earlier lease, and keeps it locked until the JVM exits
+	 */
+	@SneakyThrows
+	void lease(File libraries, File mods, Collection<File> inUse) {
+		val sb = new StringBuilder();
+		for (val f : inUse)
+			sb.append(f.getAbsolutePath()).append('\n');
+		synchronized (LibraryGc.class) {
+			if (lease == null) {
+				val leases = new File(libraries, "libloader leases");
+				//noinspection ResultOfMethodCallIgnored
+				leases.mkdirs();
+				leaseFile = LibLoaderChained.instanceFile(leases, mods, "libloader.lease");
+				lease = FileChannel.open(leaseFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				if (lease.tryLock(LOCK_POSITION, 1, false) == null) {
+					// the same mods folder is already used by another running process
+					lease.close();
+					leaseFile = new File(leases, UUID.randomUUID() + ".lease");
+					lease = FileChannel.open(leaseFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+					lease.lock(LOCK_POSITION, 1, false);
+				}
+				leaseFile.deleteOnExit();
+			}
+			lease.truncate(0);
+			lease.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)), 0);
+			lease.force(false);
+		}
+	}
+
+	@SneakyThrows
+	@Override
+	public void close() {
+		lock.release();
+		lockChannel.close();
+	}
+
+	static void collect(File libraries, File mods, Collection<File> inUse, boolean newResolution) {
+		collect(libraries, mods, inUse, newResolution, RESOLUTIONS);
+	}
+
+	/**
+	 * Deletes unused created files, unless another instance is loading or collecting
+	 *
+	 * @param newResolution whether the libraries were resolved, which starts a new generation of this instance
+	 * @param resolutions   number of generations of each instance whose files are kept
+	 */
+	@SneakyThrows
+	static void collect(File libraries, File mods, Collection<File> inUse, boolean newResolution, int resolutions) {
+		try (val channel = FileChannel.open(new File(libraries, "libloader gc.lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			 val timer = Timings.GC.start()) {
+			FileLock lock;
+			try {
+				lock = channel.tryLock(LOCK_POSITION, 1, false);
+			} catch (OverlappingFileLockException e) {
+				lock = null;
+			}
+			if (lock == null)
+				return;
+
+			// from before each instance kept its own history. Its files are no longer tracked, so are never deleted
+			//noinspection ResultOfMethodCallIgnored
+			new File(libraries, "libloader library history.bin").delete();
+			val historyFile = LibLoaderChained.instanceFile(libraries, mods, "libloader library history.bin");
+			val history = readHistory(historyFile);
+			val usages = readOtherHistories(libraries, historyFile, resolutions);
+			val generation = history.generation + (newResolution ? 1 : 0);
+			history.generation = generation;
+			val now = System.currentTimeMillis();
+			for (val f : created)
+				history.entries.computeIfAbsent(f.getPath(), k -> new Entry(generation, now));
+			created.clear();
+			val protectedFiles = liveLeases(libraries);
+			for (val f : inUse) {
+				val path = f.getAbsolutePath();
+				protectedFiles.add(path);
+				val entry = history.entries.get(path);
+				if (entry != null) {
+					entry.generation = generation;
+					entry.lastUsed = now;
+				} else if (usages.containsKey(path)) {
+					// created by another instance, which may stop using it before this one does
+					history.entries.put(path, new Entry(generation, now));
+				}
+			}
+
+			history.entries.keySet().removeIf(path -> !new File(path).isFile());
+			for (val entry : history.entries.entrySet())
+				usages.computeIfAbsent(entry.getKey(), k -> new Usage()).add(entry.getValue(), history, resolutions);
+			val candidates = new ArrayList<Map.Entry<String, Usage>>();
+			long total = 0;
+			usages.keySet().removeIf(path -> !new File(path).isFile());
+			for (val entry : usages.entrySet()) {
+				entry.getValue().size = new File(entry.getKey()).length();
+				total += entry.getValue().size;
+				if (!protectedFiles.contains(entry.getKey()))
+					candidates.add(entry);
+			}
+			candidates.sort(Comparator.comparingLong(it -> it.getValue().lastUsed));
+
+			int deleted = 0;
+			long freed = 0;
+			for (val candidate : candidates) {
+				val usage = candidate.getValue();
+				if (usage.kept && (BUDGET <= 0 || total - freed <= BUDGET))
+					continue;
+				if (delete(libraries, new File(candidate.getKey()))) {
+					history.entries.remove(candidate.getKey());
+					deleted++;
+					freed += usage.size;
+				}
+			}
+			timer.add(deleted, freed);
+			if (deleted > 0)
+				log.info("Deleted " + deleted + " unused library files, freeing " + (freed >> 20) + "MiB");
+			writeHistory(historyFile, history);
+		}
+	}
+
+	/**
+	 * Reads the histories of the other instances sharing the libraries folder
+	 *
+	 * @return usage of each created file they know of
+	 */
+	private static Map<String, Usage> readOtherHistories(File libraries, File own, int resolutions) {
+		val usages = new HashMap<String, Usage>();
+		val files = libraries.listFiles((dir, name) -> name.startsWith("libloader library history ") && name.endsWith(".bin"));
+		if (files == null)
+			return usages;
+		for (val file : files) {
+			if (file.equals(own))
+				continue;
+			val history = readHistory(file);
+			for (val entry : history.entries.entrySet())
+				usages.computeIfAbsent(entry.getKey(), k -> new Usage()).add(entry.getValue(), history, resolutions);
+		}
+		return usages;
+	}
+
+	/**
+	 * @return paths used by other running instances. Leases which are no longer locked are deleted
+	 */
+	private static Set<String> liveLeases(File libraries) throws IOException {
+		val paths = new HashSet<String>();
+		val files = new File(libraries, "libloader leases").listFiles();
+		if (files == null)
+			return paths;
+		for (val file : files) {
+			if (!file.getName().endsWith(".lease"))
+				continue;
+			// closing any channel to our own lease would release its lock on some platforms
+			if (file.equals(leaseFile)) {
+				paths.addAll(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+				continue;
+			}
+			boolean stale;
+			try (val channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				FileLock lock;
+				try {
+					lock = channel.tryLock(LOCK_POSITION, 1, false);
+				} catch (OverlappingFileLockException e) {
+					lock = null;
+				}
+				stale = lock != null;
+				if (!stale)
+					paths.addAll(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+			} catch (NoSuchFileException e) {
+				continue;
+			}
+			if (stale)
+				Files.deleteIfExists(file.toPath());
+		}
+		return paths;
+	}
+
+	/**
+	 * Deletes the file, then any parent folders inside the libraries folder which are left empty
+	 */
+	private static boolean delete(File libraries, File f) {
+		try {
+			Files.delete(f.toPath());
+		} catch (IOException e) {
+			log.warn("Failed to delete unused library '" + f + '\'', e);
+			return false;
+		}
+		val root = libraries.getAbsoluteFile();
+		File parent = f.getParentFile();
+		while (parent != null && !parent.equals(root) && parent.getPath().startsWith(root.getPath())) {
+			val children = parent.list();
+			if (children == null || children.length != 0 || !parent.delete())
+				break;
+			parent = parent.getParentFile();
+		}
+		return true;
+	}
+
+	private static History readHistory(File f) {
+		val history = StateFile.read(f, HISTORY_MAGIC, HISTORY_VERSION, in -> {
+			val result = new History();
+			result.generation = in.readInt();
+			val count = in.readInt();
+			for (int i = 0; i < count; i++)
+				result.entries.put(in.readUTF(), new Entry(in.readInt(), in.readLong()));
+			return result;
+		});
+		return history == null ? new History() : history;
+	}
+
+	private static void writeHistory(File f, History history) {
+		StateFile.write(f, HISTORY_MAGIC, HISTORY_VERSION, out -> {
+			out.writeInt(history.generation);
+			out.writeInt(history.entries.size());
+			for (val entry : history.entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().generation);
+				out.writeLong(entry.getValue().lastUsed);
+			}
+		});
+	}
+
+	private static class History {
+		int generation;
+		final Map<String, Entry> entries = new TreeMap<>();
+	}
+
+	/**
+	 * A file LibLoader created, with the last generation of this instance which used it
+	 */
+	private static class Entry {
+		int generation;
+		long lastUsed;
+
+		Entry(int generation, long lastUsed) {
+			this.generation = generation;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	/**
+	 * Use of a created file across all instances' histories
+	 */
+	private static class Usage {
+		/**
+		 * Whether any instance used it in one of its last generations which are kept
+		 */
+		boolean kept;
+		long lastUsed;
+		long size;
+
+		void add(Entry entry, History history, int resolutions) {
+			kept |= entry.generation > history.generation - resolutions;
+			lastUsed = Math.max(lastUsed, entry.lastUsed);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+import static org.minimallycorrect.libloader.LibLoaderChained.log;
+
+/**
+ * Combines library jars into a single jar, so the class loader opens one file instead of one per library
+ * <p>
+ * The merged jar is named by a hash of the sorted library hashes and only built when no jar with that name exists.
+ * Entries are taken from the first library containing them in class path order, as they would be found if each
+ * library was on the class path, except for META-INF/services files which are concatenated. Signed jars are never
+ * merged, as their signatures only cover their own entries, and are returned after the merged jar. If
+ * {@code LibLoader.repackStored} is set, the merged jar is written with STORED entries, like {@link StoredJar}.
+ */
+final class MergedJar {
+	private static final String SERVICES = "META-INF/services/";
+
+	private MergedJar() {
+	}
+
+	/**
+	 * @return the merged jar followed by any signed libraries which could not be merged
+	 */
+	@SneakyThrows
+	static List<File> merge(List<File> libs, File libraries) {
+		val hashes = new ArrayList<String>(libs.size());
+		for (val lib : libs)
+			hashes.add(Sha512.hash(lib));
+		Collections.sort(hashes);
+		val digest = Sha512.newDigest();
+		for (val hash : hashes)
+			digest.update((hash + '\n').getBytes(StandardCharsets.UTF_8));
+		val stored = LibLoaderChained.REPACK_STORED;
+		val merged = new File(libraries, "merged/" + Sha512.toHex(digest.digest()).substring(0, 32) + (stored ? ".stored.jar" : ".jar"));
+
+		val toMerge = new ArrayList<File>();
+		val result = new ArrayList<File>();
+		result.add(merged);
+		for (val lib : libs) {
+			if (isSigned(lib))
+				result.add(lib);
+			else
+				toMerge.add(lib);
+		}
+
+		FileLocks.locked(libraries, merged.getName(), () -> {
+			if (!merged.isFile())
+				build(toMerge, merged, stored);
+			return null;
+		});
+		return result;
+	}
+
+	private static boolean isSigned(File lib) throws IOException {
+		try (val zip = new ZipFile(lib)) {
+			val entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				val name = entries.nextElement().getName().toUpperCase(Locale.ROOT);
+				if (name.startsWith("META-INF/") && name.indexOf('/', 9) == -1
+					&& (name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC")))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Each library's manifest and INDEX.LIST only describe that library, so are left out
+	 */
+	private static boolean skip(String name) {
+		return name.equalsIgnoreCase(JarFile.MANIFEST_NAME) || name.equalsIgnoreCase("META-INF/INDEX.LIST");
+	}
+
+	private static ZipEntry entry(String name, long time, boolean stored, long size, long crc) {
+		val entry = new ZipEntry(name);
+		entry.setTime(time);
+		if (stored) {
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(size);
+			entry.setCompressedSize(size);
+			entry.setCrc(crc);
+		}
+		return entry;
+	}
+
+	private static void build(List<File> libs, File merged, boolean stored) throws IOException {
+		log.info("Merging " + libs.size() + " libraries into '" + merged + '\'');
+		//noinspection ResultOfMethodCallIgnored
+		merged.getParentFile().mkdirs();
+		val temp = LibLoaderChained.createTempFile(merged.toPath());
+		try {
+			try (val timer = Timings.MERGE.start()) {
+				write(libs, temp.toFile(), stored);
+				timer.add(libs.size(), Files.size(temp));
+			}
+			Files.move(temp, merged.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LibraryGc.created(merged);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void write(List<File> libs, File target, boolean stored) throws IOException {
+		val written = new HashSet<String>();
+		val services = new TreeMap<String, ByteArrayOutputStream>();
+		val manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		try (val out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(target)), manifest)) {
+			written.add(JarFile.MANIFEST_NAME);
+			for (val lib : libs) {
+				try (val zip = new ZipFile(lib)) {
+					val entries = zip.entries();
+					while (entries.hasMoreElements()) {
+						val entry = entries.nextElement();
+						val name = entry.getName();
+						if (skip(name))
+							continue;
+						if (name.startsWith(SERVICES) && !entry.isDirectory() && name.length() > SERVICES.length()) {
+							val service = services.computeIfAbsent(name, k -> new ByteArrayOutputStream());
+							try (val is = zip.getInputStream(entry)) {
+								copy(is, service);
+							}
+							service.write('\n');
+							continue;
+						}
+						if (!written.add(name))
+							continue;
+						out.putNextEntry(entry(name, entry.getTime(), stored, entry.getSize(), entry.getCrc()));
+						if (!entry.isDirectory())
+							try (val is = zip.getInputStream(entry)) {
+								copy(is, out);
+							}
+						out.closeEntry();
+					}
+				}
+			}
+			for (val service : services.entrySet()) {
+				val bytes = service.getValue().toByteArray();
+				val crc = new CRC32();
+				crc.update(bytes);
+				out.putNextEntry(entry(service.getKey(), System.currentTimeMillis(), stored, bytes.length, crc.getValue()));
+				out.write(bytes);
+				out.closeEntry();
+			}
+		}
+	}
+
+	private static void copy(InputStream is, OutputStream os) throws IOException {
+		val buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) != -1)
+			os.write(buffer, 0, read);
+	}
+}
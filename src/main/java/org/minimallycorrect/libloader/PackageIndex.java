@@ -0,0 +1,114 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.*;
+
+/**
+ * Index of the packages contained in each library jar, used by {@link IndexedClassPath} so lookups only probe jars
+ * which can contain the requested class or resource
+ * <p>
+ * Every directory containing an entry is indexed, along with all of its parents. The index is persisted keyed by
+ * {@link FileState}, so only new or changed jars are opened on later starts.
+ */
+final class PackageIndex {
+	private static final int MAGIC = 0x4C4C5049;
+	private static final int VERSION = 1;
+
+	private PackageIndex() {
+	}
+
+	/**
+	 * @return the jars containing each package, in the same order as the given libraries
+	 */
+	@SneakyThrows
+	static Map<String, List<File>> build(List<File> libs, File indexFile) {
+		Map<FileState, List<String>> lastIndex = read(indexFile);
+		val last = lastIndex == null ? Collections.<FileState, List<String>>emptyMap() : lastIndex;
+		try (val timer = Timings.INDEX.start()) {
+			val states = new ArrayList<FileState>(libs.size());
+			for (val lib : libs) {
+				val path = lib.getAbsoluteFile().toPath();
+				states.add(new FileState(path, Files.readAttributes(path, BasicFileAttributes.class)));
+			}
+			val packages = Pools.io(() -> IntStream.range(0, libs.size()).parallel().mapToObj(i -> {
+				val known = last.get(states.get(i));
+				if (known != null)
+					return known;
+				val lib = libs.get(i);
+				timer.add(1, lib.length());
+				return packages(lib);
+			}).collect(Collectors.toList()));
+
+			val index = new LinkedHashMap<FileState, List<String>>();
+			val byPackage = new HashMap<String, List<File>>();
+			for (int i = 0; i < libs.size(); i++) {
+				index.put(states.get(i), packages.get(i));
+				for (val name : packages.get(i))
+					byPackage.computeIfAbsent(name, k -> new ArrayList<>(1)).add(libs.get(i));
+			}
+			if (!index.equals(last))
+				write(index, indexFile);
+			return byPackage;
+		}
+	}
+
+	/**
+	 * @return the package of a class or resource name, in the form used as keys of the index
+	 */
+	static String getPackage(String name) {
+		val end = name.lastIndexOf('/');
+		return end <= 0 ? "" : name.substring(0, end);
+	}
+
+	@SneakyThrows
+	static List<String> packages(File jar) {
+		val packages = new HashSet<String>();
+		try (val zip = new ZipFile(jar)) {
+			val entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				String name = getPackage(entries.nextElement().getName());
+				// parents are indexed so directory lookups work, but only entries directly in the root index ""
+				while (packages.add(name) && name.indexOf('/') != -1)
+					name = getPackage(name);
+			}
+		}
+		val sorted = new ArrayList<String>(packages);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	private static Map<FileState, List<String>> read(File f) {
+		return StateFile.read(f, MAGIC, VERSION, in -> {
+			val count = in.readInt();
+			val index = new HashMap<FileState, List<String>>();
+			for (int i = 0; i < count; i++) {
+				val state = FileState.read(in);
+				val packageCount = in.readInt();
+				val packages = new ArrayList<String>(packageCount);
+				for (int j = 0; j < packageCount; j++)
+					packages.add(in.readUTF());
+				index.put(state, packages);
+			}
+			return index;
+		});
+	}
+
+	private static void write(Map<FileState, List<String>> index, File f) {
+		StateFile.write(f, MAGIC, VERSION, out -> {
+			out.writeInt(index.size());
+			for (val entry : index.entrySet()) {
+				entry.getKey().write(out);
+				out.writeInt(entry.getValue().size());
+				for (val name : entry.getValue())
+					out.writeUTF(name);
+			}
+		});
+	}
+}
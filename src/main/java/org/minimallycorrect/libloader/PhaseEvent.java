@@ -0,0 +1,72 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * JFR event for each run of a {@link Timings} phase, so startup can be seen alongside the game's own events in a flight
+ * recording
+ * <p>
+ * JFR is only present from Java 11 or 8u262, so the event type is defined at runtime with {@code jdk.jfr.EventFactory}
+ * and used through reflection, and LibLoader still builds against any Java 8. Costs nothing unless a recording enables
+ * it.
+ */
+final class PhaseEvent {
+	static final String NAME = "org.minimallycorrect.libloader.Phase";
+	private static final Object factory;
+	private static final Method newEvent;
+	private static final Method set;
+	private static final Method begin;
+	private static final Method commit;
+
+	static {
+		Object eventFactory = null;
+		Method[] methods = new Method[4];
+		try {
+			val annotationElement = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+			val annotations = Arrays.asList(
+				annotationElement.newInstance(Class.forName("jdk.jfr.Name"), NAME),
+				annotationElement.newInstance(Class.forName("jdk.jfr.Label"), "LibLoader Phase"),
+				annotationElement.newInstance(Class.forName("jdk.jfr.Category"), new String[]{"LibLoader"}),
+				annotationElement.newInstance(Class.forName("jdk.jfr.Description"), "A phase of LibLoader startup"));
+			val phaseLabel = annotationElement.newInstance(Class.forName("jdk.jfr.Label"), "Phase");
+			val phaseField = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class)
+				.newInstance(String.class, "phase", Collections.singletonList(phaseLabel));
+			val eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+			val eventClass = Class.forName("jdk.jfr.Event");
+			eventFactory = eventFactoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, Collections.singletonList(phaseField));
+			methods = new Method[]{eventFactoryClass.getMethod("newEvent"), eventClass.getMethod("set", int.class, Object.class),
+				eventClass.getMethod("begin"), eventClass.getMethod("commit")};
+		} catch (ReflectiveOperationException | LinkageError ignored) {
+			eventFactory = null;
+		}
+		factory = eventFactory;
+		newEvent = methods[0];
+		set = methods[1];
+		begin = methods[2];
+		commit = methods[3];
+	}
+
+	private PhaseEvent() {
+	}
+
+	static boolean isAvailable() {
+		return factory != null;
+	}
+
+	@SneakyThrows
+	static Object begin(String phase) {
+		val event = newEvent.invoke(factory);
+		set.invoke(event, 0, phase);
+		begin.invoke(event);
+		return event;
+	}
+
+	@SneakyThrows
+	static void commit(Object event) {
+		commit.invoke(event);
+	}
+}
@@ -0,0 +1,73 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Dedicated pools for LibLoader's parallel work, so it never competes with the game for the common pool
+ * <p>
+ * {@link #IO} runs manifest reads, extraction and downloads, which mostly wait for the disk or network, so by default
+ * it has more threads than there are cores. {@link #CPU} runs hashing, with one thread per core. Their sizes are set by
+ * {@code LibLoader.ioThreads} and {@code LibLoader.cpuThreads}. Parallel streams started by a task on one of these
+ * pools run on the same pool, and tasks waiting on each other are compensated with extra threads rather than
+ * deadlocking. Threads are daemons and exit once idle. Scanning the mods folder runs on {@link LibLoader}'s own pool.
+ */
+final class Pools {
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+	static final ForkJoinPool IO = create("I/O", Integer.parseInt(System.getProperty("LibLoader.ioThreads", String.valueOf(Math.max(4, CORES * 2)))));
+	static final ForkJoinPool CPU = create("CPU", Integer.parseInt(System.getProperty("LibLoader.cpuThreads", String.valueOf(CORES))));
+
+	private Pools() {
+	}
+
+	/**
+	 * Runs the task on the I/O pool and waits for its result
+	 */
+	static <T> T io(Callable<T> task) {
+		return run(IO, task);
+	}
+
+	/**
+	 * Runs the task on the CPU pool and waits for its result
+	 */
+	static <T> T cpu(Callable<T> task) {
+		return run(CPU, task);
+	}
+
+	@SneakyThrows
+	private static <T> T run(ForkJoinPool pool, Callable<T> task) {
+		val thread = Thread.currentThread();
+		if (thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool)
+			return task.call();
+		try {
+			return pool.submit(task).get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Waits for the future, rethrowing whatever it failed with
+	 */
+	@SneakyThrows
+	static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static ForkJoinPool create(String name, int threads) {
+		val count = new AtomicInteger();
+		return new ForkJoinPool(Math.max(1, threads), pool -> {
+			val thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("LibLoader " + name + " #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+	}
+}
@@ -0,0 +1,50 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+
+import java.io.*;
+
+import static org.minimallycorrect.libloader.LibLoaderChained.log;
+
+/**
+ * Prepares a libraries folder ahead of time, for example while building a server image, so the first start finds
+ * nothing changed and loads the cached libraries
+ * <p>
+ * Runs the same steps as a start without Forge: updates the LibLoader jar in the mods folder, then extracts,
+ * downloads and verifies every library, and writes the mod state, cached libraries and package index. The mods and
+ * libraries folders must be at the same paths they will have when the server starts, as that state is kept per mods
+ * folder. The launcher's libraries, such as log4j, must be on the class path, for example by running
+ * {@code java -cp forge-universal.jar:"mods/# LibLoader.jar" org.minimallycorrect.libloader.Provision}. Library
+ * downloads can be served from a local folder with {@code LibLoader.downloadsFolder}.
+ * <p>
+ * Usage: {@code Provision [mods folder] [libraries folder] [downloads folder]}
+ */
+public final class Provision {
+	private Provision() {
+	}
+
+	public static void main(String[] args) {
+		if (args.length > 3) {
+			System.err.println("Usage: Provision [mods folder] [libraries folder] [downloads folder]");
+			System.exit(1);
+		}
+		val mods = new File(args.length > 0 ? args[0] : System.getProperty("LibLoader.modsFolder", "mods/"));
+		val libraries = new File(args.length > 1 ? args[1] : System.getProperty("LibLoader.librariesFolder", "libraries/"));
+		if (args.length > 2)
+			System.setProperty("LibLoader.downloadsFolder", args[2]);
+		val libLoaderJar = new File(mods, System.getProperty("LibLoader.coreModJar", "# LibLoader.jar"));
+
+		if (LibLoader.checkForChanges(mods, libraries, libLoaderJar, false) == null) {
+			log.info("No mod in '" + mods + "' embeds LibLoader, nothing to provision");
+			return;
+		}
+		// include the LibLoader jar a self update may have just written
+		LibLoader.saveModState(mods, libraries);
+
+		val libs = LibLoaderChained.loadLibraries(mods, libraries, true);
+		if (LibLoaderChained.INDEX_CLASS_PATH && !libs.isEmpty())
+			PackageIndex.build(libs, LibLoaderChained.instanceFile(libraries, mods, "libloader package index.bin"));
+		Timings.write(LibLoaderChained.instanceFile(libraries, mods, "libloader timings.json"));
+		log.info("Provisioned " + libs.size() + " libraries in '" + libraries + '\'');
+	}
+}
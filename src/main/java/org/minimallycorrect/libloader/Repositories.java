@@ -0,0 +1,76 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+import org.minimallycorrect.libloader.LibLoaderChained.Library;
+
+import java.io.*;
+import java.util.*;
+
+import static org.minimallycorrect.libloader.LibLoaderChained.log;
+
+/**
+ * Local folders searched for URL sourced libraries before they are downloaded
+ * <p>
+ * {@code LibLoader.repositories} lists the repository roots to search in order, separated by the path separator. It
+ * defaults to the local Maven repository and the Gradle cache in the user's home folder. Maven layout roots are
+ * searched by the library's group, name, version and classifier, and the Gradle cache's checksum folders are listed
+ * to find the same file name. The {@code LibLoader.downloadsFolder} is searched last, by the file name of the URL.
+ * Only files with the expected hash are used.
+ */
+final class Repositories {
+	private static final List<File> ROOTS = roots();
+	private static final String DOWNLOADS = System.getProperty("LibLoader.downloadsFolder");
+
+	private Repositories() {
+	}
+
+	private static List<File> roots() {
+		val home = System.getProperty("user.home");
+		val configured = System.getProperty("LibLoader.repositories", home + "/.m2/repository" + File.pathSeparator + home + "/.gradle/caches/modules-2/files-2.1");
+		val roots = new ArrayList<File>();
+		for (val root : configured.split(File.pathSeparator))
+			if (!root.trim().isEmpty())
+				roots.add(new File(root.trim()));
+		return roots;
+	}
+
+	/**
+	 * @return a local copy of the library with its expected hash, or null if there is none
+	 */
+	static File find(Library lib) {
+		return find(lib, ROOTS, DOWNLOADS == null ? null : new File(DOWNLOADS));
+	}
+
+	static File find(Library lib, List<File> roots, File downloads) {
+		val fileName = lib.name + '-' + lib.version + (lib.classifier == null ? "" : '-' + lib.classifier) + ".jar";
+		for (val root : roots) {
+			if (!root.isDirectory())
+				continue;
+			// maven layout
+			val found = verify(lib, new File(root, lib.group.replace('.', '/') + '/' + lib.name + '/' + lib.version + '/' + fileName));
+			if (found != null)
+				return found;
+			// gradle cache layout, with a folder named by each file's SHA-1
+			val checksums = new File(root, lib.group + '/' + lib.name + '/' + lib.version).listFiles();
+			if (checksums != null)
+				for (val checksum : checksums) {
+					val cached = verify(lib, new File(checksum, fileName));
+					if (cached != null)
+						return cached;
+				}
+		}
+		if (downloads != null && lib.url != null)
+			return verify(lib, new File(downloads, lib.url.substring(lib.url.lastIndexOf('/') + 1)));
+		return null;
+	}
+
+	private static File verify(Library lib, File candidate) {
+		if (!candidate.isFile())
+			return null;
+		val hash = Sha512.hash(candidate);
+		if (hash.equals(lib.sha512hash))
+			return candidate;
+		log.warn("Ignoring '" + candidate + "' for library " + lib + ", expected hash " + lib.sha512hash + ", got " + hash);
+		return null;
+	}
+}
@@ -0,0 +1,253 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.minimallycorrect.libloader.LibLoaderChained.Archive;
+import org.minimallycorrect.libloader.LibLoaderChained.Library;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+import static org.minimallycorrect.libloader.LibLoaderChained.log;
+
+/**
+ * Resolves the full library graph before anything is extracted or verified
+ * <p>
+ * Resolution runs in rounds. The declarations of the mod jars, then of the libraries selected by the last round, are
+ * read in parallel using each jar's {@link Descriptor} or else its manifest, then offered one at a time in a fixed
+ * order, so the result never depends on thread timing. Only the versions still selected at the end of a round have
+ * their own declarations read. Embedded libraries are read from inside the jar they are embedded in, so nothing is
+ * extracted or hashed for a version which is superseded in the same round. Once no round selects anything new, the
+ * result is what can be reached from the mods through the selected versions, so libraries only declared by a version
+ * which a later round superseded are left out.
+ * <p>
+ * Resolution runs as a pipeline on the {@link Pools#IO} pool. Each library selected by a round is queued for
+ * extraction or download while the following rounds are read. If a newer version is selected before the queued save
+ * starts, the save is skipped, unless the library is needed as the source of an embedded library.
+ * <p>
+ * Declarations read by the last resolution are reused from the {@link DeclarationCache}, so only new or modified jars,
+ * and libraries which were not selected before, are read.
+ */
+final class Resolver {
+	private final File libraries;
+	private final DeclarationCache cache;
+	private final ConcurrentHashMap<String, Library> selected = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, List<Library>> expanded = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, CompletableFuture<File>> saves = new ConcurrentHashMap<>();
+	private final Set<String> needed = ConcurrentHashMap.newKeySet();
+	private final ConcurrentHashMap<File, Archive> archives = new ConcurrentHashMap<>();
+	/**
+	 * Held for reading by each running save, and for writing while the archives are closed
+	 */
+	private final ReentrantReadWriteLock saving = new ReentrantReadWriteLock();
+	private volatile boolean closed;
+
+	Resolver(File libraries, DeclarationCache cache) {
+		this.libraries = libraries;
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the selected version of every library reachable from the given jars, each already saved
+	 */
+	Collection<Library> resolve(Collection<File> jars) {
+		try {
+			return Pools.io(() -> {
+				val sorted = new ArrayList<File>(jars);
+				sorted.sort(Comparator.comparing(File::getPath));
+				val mods = readAll(sorted, this::declarations);
+				List<Library> round = mods;
+				while (!round.isEmpty())
+					round = readAll(offer(round), this::declarations);
+				val resolved = reachable(mods);
+				resolved.parallelStream().forEach(this::ensureSaved);
+				return resolved;
+			});
+		} finally {
+			// saves of superseded libraries which have not started yet are skipped, and any already running finish
+			// before their archives are closed
+			saving.writeLock().lock();
+			try {
+				closed = true;
+				for (val archive : archives.values())
+					archive.close();
+			} finally {
+				saving.writeLock().unlock();
+			}
+		}
+	}
+
+	private List<Library> declarations(File jar) {
+		try {
+			val path = jar.getAbsoluteFile().toPath();
+			val key = new FileState(path, Files.readAttributes(path, BasicFileAttributes.class));
+			val cached = cache.get(key);
+			if (cached != null)
+				return cached;
+			return cache.put(key, jar, read(jar));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read declarations of '" + jar + '\'', e);
+		}
+	}
+
+	private static List<Library> read(File jar) throws IOException {
+		try (val timer = Timings.MANIFEST.start()) {
+			val declarations = LibLoaderChained.readDeclarations(jar);
+			timer.add(1, 0);
+			return declarations;
+		}
+	}
+
+	/**
+	 * Reads the declarations of each source in parallel, keeping the order of the sources
+	 */
+	private static <T> List<Library> readAll(List<T> sources, Function<T, List<Library>> reader) {
+		val declarations = new ArrayList<Library>();
+		for (val read : sources.parallelStream().map(reader).collect(Collectors.toList()))
+			declarations.addAll(read);
+		return declarations;
+	}
+
+	/**
+	 * Offers each declaration in order, then queues saves of the libraries this round selected
+	 *
+	 * @return libraries selected by this round whose declarations have not been read yet
+	 */
+	private List<Library> offer(List<Library> declarations) {
+		val winners = new LinkedHashMap<String, Library>();
+		for (val lib : declarations) {
+			// indicates requirement but not provided here. Should be provided by one of the libs we depend on
+			if (lib.sha512hash != null && select(lib))
+				winners.put(lib.getKey(), lib);
+		}
+
+		val newlySelected = new ArrayList<Library>();
+		for (val lib : winners.values()) {
+			if (expanded.containsKey(lib.sha512hash))
+				continue;
+			newlySelected.add(lib);
+			saves.computeIfAbsent(lib.sha512hash, k -> CompletableFuture.supplyAsync(() -> whileOpen(() -> speculativeSave(lib)), Pools.IO));
+		}
+		return newlySelected;
+	}
+
+	/**
+	 * Walks from the mods' declarations through the selected version of each library, checking requirements on the
+	 * way
+	 *
+	 * @return the selected libraries which can be reached
+	 */
+	private List<Library> reachable(List<Library> mods) {
+		val reached = new LinkedHashMap<String, Library>();
+		val queue = new ArrayDeque<Library>(mods);
+		while (!queue.isEmpty()) {
+			val declaration = queue.poll();
+			if (declaration.sha512hash == null) {
+				checkRequirement(declaration);
+				continue;
+			}
+			val lib = selected.get(declaration.getKey());
+			if (reached.putIfAbsent(lib.sha512hash, lib) == null)
+				queue.addAll(expanded.get(lib.sha512hash));
+		}
+		return new ArrayList<>(reached.values());
+	}
+
+	private boolean select(Library lib) {
+		return selected.compute(lib.getKey(), (key, old) -> old == null || lib.compareTo(old) > 0 ? lib : old) == lib;
+	}
+
+	private boolean isSuperseded(Library lib) {
+		return selected.get(lib.getKey()) != lib;
+	}
+
+	private List<Library> declarations(Library lib) {
+		List<Library> declarations = cache.get(lib.sha512hash);
+		if (declarations == null)
+			declarations = cache.put(lib.sha512hash, lib.getFile(libraries), read(lib));
+		for (val declaration : declarations)
+			declaration.parent = lib;
+		expanded.put(lib.sha512hash, declarations);
+		return declarations;
+	}
+
+	@SneakyThrows
+	private List<Library> read(Library lib) {
+		if (lib.file == null)
+			return read(ensureSaved(lib));
+		if (lib.parent != null)
+			ensureSaved(lib.parent);
+		try (val timer = Timings.MANIFEST.start()) {
+			val declarations = LibLoaderChained.readDeclarations(lib.source, lib.file, lib.getFile(libraries));
+			timer.add(1, 0);
+			return declarations;
+		}
+	}
+
+	/**
+	 * Libraries which embed other libraries, or are only available from a URL, must be saved before their
+	 * manifest can be read, and every selected library must be saved before resolution finishes
+	 */
+	private File ensureSaved(Library lib) {
+		needed.add(lib.sha512hash);
+		while (true) {
+			val future = saves.computeIfAbsent(lib.sha512hash, k -> CompletableFuture.supplyAsync(() -> whileOpen(() -> save(lib)), Pools.IO));
+			val file = Pools.join(future);
+			if (file != null)
+				return file;
+			if (closed)
+				throw new IllegalStateException("Resolution already finished, so can not save " + lib);
+			// a speculative save was skipped just before we marked the library as needed
+			saves.remove(lib.sha512hash, future);
+		}
+	}
+
+	/**
+	 * Runs the save unless resolution has finished, after which its archive may be closed
+	 * <p>
+	 * A save waiting for its parent's save holds the read lock, so the parent's save must get it even while the
+	 * archives are waiting to be closed. tryLock does, as it never waits behind a queued writer.
+	 *
+	 * @return the saved file, or null if skipped
+	 */
+	private File whileOpen(Supplier<File> save) {
+		if (!saving.readLock().tryLock())
+			return null;
+		try {
+			return closed ? null : save.get();
+		} finally {
+			saving.readLock().unlock();
+		}
+	}
+
+	private File speculativeSave(Library lib) {
+		if (isSuperseded(lib) && !needed.contains(lib.sha512hash))
+			return null;
+		return save(lib);
+	}
+
+	private File save(Library lib) {
+		if (lib.file == null)
+			return lib.save(libraries, null);
+		// an embedded library's source is the jar its parent was saved to
+		if (lib.parent != null)
+			ensureSaved(lib.parent);
+		return lib.save(libraries, archives.computeIfAbsent(lib.source, Archive::new));
+	}
+
+	private void checkRequirement(Library required) {
+		val provided = selected.get(required.getKey());
+		val name = required.getKey() + (required.version == null ? "" : "-" + required.version);
+		val requiredBy = required.parent == null ? "'" + required.source + '\'' : required.parent.toString();
+		if (provided == null)
+			log.warn("Library " + name + " is required by " + requiredBy + " but is not provided by any mod or library");
+		else if (required.version != null && provided.version.compareTo(required.version) < 0)
+			log.warn("Library " + name + " is required by " + requiredBy + " but only " + provided + " is provided");
+	}
+}
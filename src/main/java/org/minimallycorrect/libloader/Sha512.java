@@ -0,0 +1,232 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streaming SHA-512 hashing of library jars
+ * <p>
+ * Files are read through a fixed size direct buffer which is reused per thread, so hashing a large library never
+ * allocates its size on the heap. Each file is hashed at most once unless its size, modification time or file key
+ * change. Known hashes are kept between starts in a ledger, unless {@code LibLoader.paranoidHashing} is set, in
+ * which case only hashes computed by this JVM are trusted. Files derived from a library, such as repacked jars, also
+ * record the hash of the library they were made from.
+ */
+final class Sha512 {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int LEDGER_MAGIC = 0x4C4C484C;
+	private static final int LEDGER_VERSION = 2;
+	private static final boolean PARANOID = Boolean.parseBoolean(System.getProperty("LibLoader.paranoidHashing", "false"));
+	private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+	private static final ConcurrentHashMap<File, KnownHash> known = new ConcurrentHashMap<>();
+
+	private Sha512() {
+	}
+
+	@SneakyThrows
+	static MessageDigest newDigest() {
+		return MessageDigest.getInstance("SHA-512");
+	}
+
+	@SneakyThrows
+	static String hash(File f) {
+		val key = f.getAbsoluteFile();
+		val attributes = Files.readAttributes(key.toPath(), BasicFileAttributes.class);
+		val knownHash = known.get(key);
+		if (knownHash != null && knownHash.matches(attributes) && !(PARANOID && knownHash.fromLedger))
+			return knownHash.hash;
+
+		val hash = Pools.cpu(() -> compute(key));
+		known.put(key, new KnownHash(attributes, hash, ""));
+		return hash;
+	}
+
+	/**
+	 * Replaces the known hashes with those recorded in the ledger
+	 */
+	static void load(File ledger) {
+		val entries = read(ledger);
+		known.clear();
+		if (entries != null)
+			known.putAll(entries);
+	}
+
+	/**
+	 * Records the known hashes of all files which still exist in the ledger
+	 * <p>
+	 * Other processes sharing the libraries folder may have verified files since the ledger was loaded, so their
+	 * entries are kept unless this process knows a newer hash for the same file.
+	 */
+	static void save(File ledger) {
+		FileLocks.locked(ledger.getParentFile(), ledger.getName(), () -> {
+			val entries = new TreeMap<File, KnownHash>();
+			val saved = read(ledger);
+			if (saved != null)
+				entries.putAll(saved);
+			entries.putAll(known);
+			entries.keySet().removeIf(it -> !it.isFile());
+			StateFile.write(ledger, LEDGER_MAGIC, LEDGER_VERSION, out -> {
+				out.writeInt(entries.size());
+				for (val entry : entries.entrySet()) {
+					out.writeUTF(entry.getKey().getPath());
+					entry.getValue().write(out);
+				}
+			});
+			return null;
+		});
+	}
+
+	private static Map<File, KnownHash> read(File ledger) {
+		return StateFile.read(ledger, LEDGER_MAGIC, LEDGER_VERSION, in -> {
+			val count = in.readInt();
+			val result = new HashMap<File, KnownHash>();
+			for (int i = 0; i < count; i++)
+				result.put(new File(in.readUTF()), KnownHash.read(in));
+			return result;
+		});
+	}
+
+	/**
+	 * Hashes the file without consulting or updating the known hashes
+	 */
+	@SneakyThrows
+	static String compute(File f) {
+		val digest = newDigest();
+		try (val timer = Timings.HASH.start();
+			 val channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			update(digest, channel);
+			timer.add(1, channel.size());
+		}
+		return toHex(digest.digest());
+	}
+
+	static void remember(File f, String hash) {
+		remember(f, hash, "");
+	}
+
+	/**
+	 * Records the hash of a file which was derived from another file, and the hash of that file
+	 */
+	@SneakyThrows
+	static void remember(File f, String hash, String origin) {
+		val key = f.getAbsoluteFile();
+		known.put(key, new KnownHash(Files.readAttributes(key.toPath(), BasicFileAttributes.class), hash, origin));
+	}
+
+	/**
+	 * @return the hash of the file the given file was derived from, or null if it is unknown or the file changed
+	 */
+	static String origin(File f) {
+		val key = f.getAbsoluteFile();
+		val knownHash = known.get(key);
+		if (knownHash == null || knownHash.origin.isEmpty() || (PARANOID && knownHash.fromLedger))
+			return null;
+		try {
+			return knownHash.matches(Files.readAttributes(key.toPath(), BasicFileAttributes.class)) ? knownHash.origin : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Copies the given stream to the target, replacing it if it exists, and hashes the bytes as they are written
+	 *
+	 * @return hex encoded SHA-512 of the written bytes
+	 */
+	@SneakyThrows
+	static String copy(InputStream is, File target) {
+		val digest = newDigest();
+		val in = Channels.newChannel(is);
+		try (val out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			val buffer = buffers.get();
+			buffer.clear();
+			while (in.read(buffer) != -1) {
+				buffer.flip();
+				buffer.mark();
+				digest.update(buffer);
+				buffer.reset();
+				while (buffer.hasRemaining())
+					out.write(buffer);
+				buffer.clear();
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	static void update(MessageDigest digest, ReadableByteChannel channel) throws IOException {
+		val buffer = buffers.get();
+		buffer.clear();
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+			digest.update(buffer);
+			buffer.clear();
+		}
+	}
+
+	static String toHex(byte[] hash) {
+		val hexString = new StringBuilder(hash.length * 2);
+		//noinspection ForLoopReplaceableByForEach
+		for (int i = 0; i < hash.length; i++) {
+			String hex = Integer.toHexString(0xff & hash[i]);
+			if (hex.length() == 1) hexString.append('0');
+			hexString.append(hex);
+		}
+		return hexString.toString();
+	}
+
+	private static class KnownHash {
+		final long size;
+		final long time;
+		final String fileKey;
+		final String hash;
+		final String origin;
+		final boolean fromLedger;
+
+		private KnownHash(long size, long time, String fileKey, String hash, String origin, boolean fromLedger) {
+			this.size = size;
+			this.time = time;
+			this.fileKey = fileKey;
+			this.hash = hash;
+			this.origin = origin;
+			this.fromLedger = fromLedger;
+		}
+
+		KnownHash(BasicFileAttributes attributes, String hash, String origin) {
+			this(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), fileKey(attributes), hash, origin, false);
+		}
+
+		/**
+		 * The inode on unix-like systems, so a file replaced by another with the same size and time still misses
+		 */
+		private static String fileKey(BasicFileAttributes attributes) {
+			val key = attributes.fileKey();
+			return key == null ? "" : key.toString();
+		}
+
+		boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size() && time == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+				&& fileKey.equals(fileKey(attributes));
+		}
+
+		static KnownHash read(DataInput in) throws IOException {
+			return new KnownHash(in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readUTF(), true);
+		}
+
+		void write(DataOutput out) throws IOException {
+			out.writeLong(size);
+			out.writeLong(time);
+			out.writeUTF(fileKey);
+			out.writeUTF(hash);
+			out.writeUTF(origin);
+		}
+	}
+}
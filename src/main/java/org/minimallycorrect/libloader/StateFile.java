@@ -0,0 +1,138 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+/**
+ * Small versioned binary files used to persist LibLoader state between starts
+ * <p>
+ * Layout: magic, format version, payload length, payload, CRC32 of the payload. The whole file is read with a single
+ * channel read, and anything missing, truncated, corrupt or written by another format version reads as null so the
+ * caller falls back to doing a full scan. Files are written to a unique temporary file under a {@link FileLocks} lock
+ * and atomically moved into place, so readers in other processes never see a partial file. The same format is also
+ * used for state stored inside other files, such as the {@link Descriptor} in jars.
+ */
+final class StateFile {
+	private static final Logger log = LogManager.getLogger("LibLoader");
+	private static final int HEADER_SIZE = 12;
+
+	private StateFile() {
+	}
+
+	static <T> T read(File f, int magic, int version, Reader<T> reader) {
+		try (val channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			val size = channel.size();
+			if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE)
+				return null;
+			val buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining())
+				if (channel.read(buffer) == -1)
+					return null;
+			return decode(buffer.array(), f.toString(), magic, version, reader);
+		} catch (IOException ignored) {
+		} catch (Throwable t) {
+			log.error("Failed to read '" + f + '\'', t);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads state in the same format from a stream, such as a jar entry
+	 *
+	 * @param name used in log messages
+	 */
+	static <T> T read(InputStream in, String name, int magic, int version, Reader<T> reader) {
+		try {
+			val bytes = new ByteArrayOutputStream();
+			val buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				bytes.write(buffer, 0, read);
+			return decode(bytes.toByteArray(), name, magic, version, reader);
+		} catch (IOException ignored) {
+		} catch (Throwable t) {
+			log.error("Failed to read '" + name + '\'', t);
+		}
+		return null;
+	}
+
+	private static <T> T decode(byte[] bytes, String name, int magic, int version, Reader<T> reader) throws IOException {
+		if (bytes.length < HEADER_SIZE + 4)
+			return null;
+		val buffer = ByteBuffer.wrap(bytes);
+		if (buffer.getInt() != magic || buffer.getInt() != version)
+			return null;
+		val length = buffer.getInt();
+		if (length != buffer.remaining() - 4)
+			return null;
+
+		val crc = new CRC32();
+		crc.update(bytes, HEADER_SIZE, length);
+		if ((int) crc.getValue() != buffer.getInt(HEADER_SIZE + length)) {
+			log.warn("Ignoring corrupt state file '" + name + '\'');
+			return null;
+		}
+		return reader.read(new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, length)));
+	}
+
+	/**
+	 * @return the state in this format, for storing somewhere other than a file of its own
+	 */
+	static byte[] encode(int magic, int version, Writer writer) throws IOException {
+		val bytes = new ByteArrayOutputStream();
+		val out = new DataOutputStream(bytes);
+		out.writeInt(magic);
+		out.writeInt(version);
+		out.writeInt(0);
+		writer.write(out);
+		out.writeInt(0);
+
+		val buffer = ByteBuffer.wrap(bytes.toByteArray());
+		val length = buffer.capacity() - HEADER_SIZE - 4;
+		val crc = new CRC32();
+		crc.update(buffer.array(), HEADER_SIZE, length);
+		buffer.putInt(8, length);
+		buffer.putInt(HEADER_SIZE + length, (int) crc.getValue());
+		return buffer.array();
+	}
+
+	static void write(File f, int magic, int version, Writer writer) {
+		try {
+			//noinspection ResultOfMethodCallIgnored
+			f.getParentFile().mkdirs();
+			val buffer = ByteBuffer.wrap(encode(magic, version, writer));
+
+			FileLocks.locked(f.getParentFile(), f.getName(), () -> {
+				val temp = LibLoaderChained.createTempFile(f.toPath());
+				try {
+					try (val channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+						while (buffer.hasRemaining())
+							channel.write(buffer);
+					}
+					Files.move(temp, f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(temp);
+				}
+				return null;
+			});
+		} catch (IOException ignored) {
+		} catch (Throwable t) {
+			log.error("Failed to save '" + f + '\'', t);
+		}
+	}
+
+	interface Reader<T> {
+		T read(DataInputStream in) throws IOException;
+	}
+
+	interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+}
@@ -0,0 +1,89 @@
+package org.minimallycorrect.libloader;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.*;
+
+import static org.minimallycorrect.libloader.LibLoaderChained.log;
+
+/**
+ * Uncompressed copies of library jars, so classes are read without being inflated on every start
+ * <p>
+ * Each library is rewritten next to itself with every entry STORED, in the same order and with the same contents,
+ * so jar signatures stay valid. The hash ledger records the hash of the library each copy was made from, and a copy
+ * is only used while its own attributes and the library's hash still match that record.
+ */
+final class StoredJar {
+	private StoredJar() {
+	}
+
+	/**
+	 * @return the stored copy of each library, in the same order
+	 */
+	static List<File> repack(List<File> libs, File libraries) {
+		return Pools.io(() -> libs.parallelStream()
+			.map(lib -> FileLocks.locked(libraries, getStoredFile(lib).getPath(), () -> repack(lib)))
+			.collect(Collectors.toList()));
+	}
+
+	static File getStoredFile(File lib) {
+		val name = lib.getName();
+		val base = name.toLowerCase(Locale.ROOT).endsWith(".jar") ? name.substring(0, name.length() - 4) : name;
+		return new File(lib.getParentFile(), base + ".stored.jar");
+	}
+
+	@SneakyThrows
+	private static File repack(File lib) {
+		val stored = getStoredFile(lib);
+		val hash = Sha512.hash(lib);
+		if (stored.isFile() && hash.equals(Sha512.origin(stored)))
+			return stored;
+
+		log.info("Repacking '" + lib + "' without compression");
+		val temp = LibLoaderChained.createTempFile(stored.toPath());
+		try {
+			try (val timer = Timings.REPACK.start()) {
+				write(lib, temp.toFile());
+				timer.add(1, Files.size(temp));
+			}
+			Files.move(temp, stored.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		LibraryGc.created(stored);
+		Sha512.remember(stored, Sha512.compute(stored), hash);
+		return stored;
+	}
+
+	private static void write(File lib, File target) throws IOException {
+		val buffer = new byte[8192];
+		try (val zip = new ZipFile(lib);
+			 val out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+			val entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				val entry = entries.nextElement();
+				// sizes and CRC come from the central directory, so STORED entries can be written in a single pass
+				val copy = new ZipEntry(entry.getName());
+				copy.setMethod(ZipEntry.STORED);
+				copy.setTime(entry.getTime());
+				copy.setSize(entry.getSize());
+				copy.setCompressedSize(entry.getSize());
+				copy.setCrc(entry.getCrc());
+				if (entry.getComment() != null)
+					copy.setComment(entry.getComment());
+				out.putNextEntry(copy);
+				try (val is = zip.getInputStream(entry)) {
+					int read;
+					while ((read = is.read(buffer)) != -1)
+						out.write(buffer, 0, read);
+				}
+				out.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Records how long each phase of LibLoader startup takes, and how many files and bytes it handled
+ * <p>
+ * Phases may run on many threads at once, so both the wall clock span from the first start to the last end and the
+ * total time summed across threads are kept. The phases run by {@link LibLoader} before the inner jar is loaded are
+ * passed in the {@code LibLoader.timings} property, as the outer jar may be another version, and are reported first.
+ * Where JFR is available each run of a phase is also a {@link PhaseEvent}.
+ */
+final class Timings {
+	private static final Logger log = LogManager.getLogger("LibLoader");
+	private static final List<Phase> phases = new ArrayList<>();
+	private static final boolean JFR = PhaseEvent.isAvailable();
+	static final Phase MANIFEST = phase("manifest");
+	static final Phase EXTRACT = phase("extract");
+	static final Phase DOWNLOAD = phase("download");
+	static final Phase HASH = phase("hash");
+	static final Phase REPACK = phase("repack");
+	static final Phase MERGE = phase("merge");
+	static final Phase GC = phase("gc");
+	static final Phase INDEX = phase("index");
+	static final Phase CLASSPATH = phase("classpath");
+
+	private Timings() {
+	}
+
+	private static Phase phase(String name) {
+		val phase = new Phase(name);
+		phases.add(phase);
+		return phase;
+	}
+
+	/**
+	 * @return the phases passed by {@link LibLoader}, followed by those run here
+	 */
+	private static List<Phase> allPhases() {
+		val all = new ArrayList<Phase>();
+		val outer = System.getProperty("LibLoader.timings");
+		if (outer != null && !outer.isEmpty()) {
+			for (val entry : outer.split(";")) {
+				val phase = Phase.parse(entry);
+				if (phase == null)
+					log.warn("Ignoring malformed timing '" + entry + '\'');
+				else
+					all.add(phase);
+			}
+		}
+		all.addAll(phases);
+		return all;
+	}
+
+	static String summary() {
+		val sb = new StringBuilder("LibLoader timings:");
+		for (val phase : allPhases()) {
+			if (phase.count.get() == 0)
+				continue;
+			sb.append("\n\t").append(phase.name).append(": ").append(phase.wallMillis()).append("ms wall, ")
+				.append(phase.nanos.get() / 1000000).append("ms total, ").append(phase.files.get()).append(" files, ")
+				.append(phase.bytes.get() >> 10).append("KiB");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes all phases which ran as JSON, so slow starts can be compared between pack updates
+	 */
+	static void write(File f) {
+		val sb = new StringBuilder("{\n\t\"time\": ").append(System.currentTimeMillis()).append(",\n\t\"phases\": [");
+		boolean first = true;
+		for (val phase : allPhases()) {
+			if (phase.count.get() == 0)
+				continue;
+			sb.append(first ? "\n" : ",\n");
+			first = false;
+			sb.append("\t\t{\"name\": \"").append(phase.name)
+				.append("\", \"start\": ").append(phase.start.get())
+				.append(", \"end\": ").append(phase.end.get())
+				.append(", \"wallMillis\": ").append(phase.wallMillis())
+				.append(", \"totalMillis\": ").append(phase.nanos.get() / 1000000)
+				.append(", \"count\": ").append(phase.count.get())
+				.append(", \"files\": ").append(phase.files.get())
+				.append(", \"bytes\": ").append(phase.bytes.get()).append('}');
+		}
+		sb.append("\n\t]\n}\n");
+		try {
+			//noinspection ResultOfMethodCallIgnored
+			f.getParentFile().mkdirs();
+			val temp = LibLoaderChained.createTempFile(f.toPath());
+			try {
+				Files.write(temp, sb.toString().getBytes(Charset.forName("UTF-8")));
+				Files.move(temp, f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			log.warn("Failed to write timings to '" + f + '\'', e);
+		}
+		log.info(summary());
+	}
+
+	static final class Phase {
+		final String name;
+		final AtomicLong start = new AtomicLong(Long.MAX_VALUE);
+		final AtomicLong end = new AtomicLong();
+		final AtomicLong nanos = new AtomicLong();
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong files = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @param entry phase written as {@code name:start:end:nanos:count:files:bytes}
+		 * @return the phase, or null if malformed
+		 */
+		static Phase parse(String entry) {
+			val parts = entry.split(":");
+			if (parts.length != 7)
+				return null;
+			val phase = new Phase(parts[0]);
+			try {
+				phase.start.set(Long.parseLong(parts[1]));
+				phase.end.set(Long.parseLong(parts[2]));
+				phase.nanos.set(Long.parseLong(parts[3]));
+				phase.count.set(Long.parseLong(parts[4]));
+				phase.files.set(Long.parseLong(parts[5]));
+				phase.bytes.set(Long.parseLong(parts[6]));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			return phase;
+		}
+
+		Timer start() {
+			val now = System.currentTimeMillis();
+			start.accumulateAndGet(now, Math::min);
+			return new Timer(this);
+		}
+
+		void add(long files, long bytes) {
+			this.files.addAndGet(files);
+			this.bytes.addAndGet(bytes);
+		}
+
+		long wallMillis() {
+			return Math.max(0, end.get() - start.get());
+		}
+	}
+
+	static final class Timer implements AutoCloseable {
+		private final Phase phase;
+		private final long startNanos = System.nanoTime();
+		/**
+		 * JFR event from {@link PhaseEvent} if JFR is available, typed as Object as its class only exists at runtime
+		 */
+		private final Object event;
+
+		private Timer(Phase phase) {
+			this.phase = phase;
+			event = JFR ? PhaseEvent.begin(phase.name) : null;
+		}
+
+		void add(long files, long bytes) {
+			phase.add(files, bytes);
+		}
+
+		@Override
+		public void close() {
+			phase.nanos.addAndGet(System.nanoTime() - startNanos);
+			phase.count.incrementAndGet();
+			phase.end.accumulateAndGet(System.currentTimeMillis(), Math::max);
+			if (event != null)
+				PhaseEvent.commit(event);
+		}
+	}
+}
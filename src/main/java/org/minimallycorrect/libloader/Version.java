@@ -0,0 +1,171 @@
+package org.minimallycorrect.libloader;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Version made of dot separated numbers with an optional suffix after the first '-', such as {@code 1.12.2-SNAPSHOT}
+ * <p>
+ * Versions compare by their numbers, with missing numbers treated as 0, then by suffix: alpha, then beta or snapshot,
+ * then any other suffix, then no suffix. The same few versions are declared by many jars, so versions are interned by
+ * their canonical string, which {@code 1.0} and {@code 01.0} share, and their suffix rank, string and hash are
+ * computed once.
+ */
+final class Version implements Comparable<Version> {
+	private static final ConcurrentHashMap<String, Version> INTERNED = new ConcurrentHashMap<>();
+
+	final int[] parts;
+	final String suffix;
+	private final int suffixInt;
+	private final String string;
+	private final int hash;
+
+	private Version(int[] parts, String suffix, String string) {
+		this.parts = parts;
+		this.suffix = suffix;
+		this.suffixInt = suffixInt(suffix);
+		this.string = string;
+		int hash = Objects.hashCode(suffix);
+		// versions which only differ by trailing zeros are equal, so must have the same hash
+		int length = parts.length;
+		while (length > 0 && parts[length - 1] == 0)
+			length--;
+		for (int i = 0; i < length; i++)
+			hash = hash * 31 + parts[i];
+		this.hash = hash;
+	}
+
+	static Version of(String version) {
+		if (version == null)
+			throw new IllegalArgumentException("Version can not be null");
+		Version parsed = parse(version);
+		Version existing = INTERNED.putIfAbsent(parsed.string, parsed);
+		return existing == null ? parsed : existing;
+	}
+
+	static Version of(int[] parts, String suffix) {
+		String string = format(parts, suffix);
+		Version interned = INTERNED.get(string);
+		if (interned == null) {
+			interned = new Version(parts.clone(), suffix, string);
+			Version existing = INTERNED.putIfAbsent(string, interned);
+			if (existing != null)
+				interned = existing;
+		}
+		return interned;
+	}
+
+	private static Version parse(String version) {
+		version = version.trim();
+		String suffix = null;
+		int end = version.indexOf('-');
+		if (end == -1) {
+			end = version.length();
+		} else {
+			suffix = version.substring(end + 1).trim();
+		}
+
+		int count = 1;
+		for (int i = 0; i < end; i++)
+			if (version.charAt(i) == '.')
+				count++;
+		int[] parts = new int[count];
+		int part = 0;
+		long value = 0;
+		boolean digits = false;
+		for (int i = 0; i <= end; i++) {
+			char c = i == end ? '.' : version.charAt(i);
+			if (c == '.' && digits) {
+				parts[part++] = (int) value;
+				value = 0;
+				digits = false;
+			} else if (c >= '0' && c <= '9' && (value = value * 10 + (c - '0')) <= Integer.MAX_VALUE) {
+				digits = true;
+			} else {
+				throw new IllegalArgumentException("Invalid version format. Should consist of digits and dots with optional suffix after -. Got '" + version.substring(0, end) + "'");
+			}
+		}
+		return new Version(parts, suffix, format(parts, suffix));
+	}
+
+	private static String format(int[] parts, String suffix) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < parts.length; i++) {
+			if (i != 0)
+				sb.append('.');
+			sb.append(parts[i]);
+		}
+		if (suffix != null)
+			sb.append('-').append(suffix);
+		return sb.toString();
+	}
+
+	private static int suffixInt(String suffix) {
+		if (suffix == null)
+			return 0;
+
+		switch (suffix.toLowerCase().trim()) {
+			case "alpha":
+				return -3;
+			case "beta":
+			case "snapshot":
+				return -2;
+			case "":
+				return 0;
+			default:
+				return -1;
+		}
+	}
+
+	@Override
+	public int compareTo(@SuppressWarnings("NullableProblems") Version that) {
+		if (that == null)
+			return 1;
+
+		if (this == that)
+			return 0;
+
+		int length = Math.max(parts.length, that.parts.length);
+		for (int i = 0; i < length; i++) {
+			int thisPart = i < parts.length ? parts[i] : 0;
+			int thatPart = i < that.parts.length ? that.parts[i] : 0;
+
+			if (thisPart < thatPart)
+				return -1;
+			if (thisPart > thatPart)
+				return 1;
+		}
+
+		String a = suffix;
+		String b = that.suffix;
+		if (Objects.equals(a, b))
+			return 0;
+		int s = Integer.compare(suffixInt, that.suffixInt);
+		if (s != 0)
+			return s;
+		if (a == null)
+			return -1;
+		if (b == null)
+			return 1;
+		return a.compareTo(b);
+	}
+
+	int suffixInt() {
+		return suffixInt;
+	}
+
+	@Override
+	public String toString() {
+		return string;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object that) {
+		return this == that || that instanceof Version && hash == that.hashCode() && compareTo((Version) that) == 0;
+	}
+}
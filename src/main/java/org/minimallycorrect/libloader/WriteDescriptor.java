@@ -0,0 +1,99 @@
+package org.minimallycorrect.libloader;
+
+import lombok.val;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+import static org.minimallycorrect.libloader.LibLoaderChained.log;
+
+/**
+ * Adds a {@link Descriptor} to built mod jars, so LibLoader reads their declarations without parsing the manifest
+ * <p>
+ * Run as the last step of a mod's build, after any reobfuscation, as a descriptor is read in preference to the
+ * manifest and must be rewritten whenever the LibLoader-* attributes or embedded libraries change. An existing
+ * descriptor is replaced. log4j must be on the class path, for example with Gradle:
+ * {@code task libLoaderDescriptor(type: JavaExec) { classpath = configurations.compile; main =
+ * 'org.minimallycorrect.libloader.WriteDescriptor'; args jar.archivePath }}
+ * <p>
+ * Usage: {@code WriteDescriptor <mod jar>...}
+ */
+public final class WriteDescriptor {
+	private WriteDescriptor() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: WriteDescriptor <mod jar>...");
+			System.exit(1);
+		}
+		for (val arg : args) {
+			val jar = new File(arg);
+			write(jar);
+			log.info("Wrote " + Descriptor.NAME + " to '" + jar + '\'');
+		}
+	}
+
+	/**
+	 * Rewrites the jar with its descriptor directly after the manifest, where it is found without reading the rest of
+	 * the jar when the jar is embedded in another
+	 */
+	static void write(File jar) throws IOException {
+		val descriptor = Descriptor.create(jar);
+		val temp = LibLoaderChained.createTempFile(jar.toPath());
+		try {
+			try (val zip = new ZipFile(jar); val out = new ZipOutputStream(Files.newOutputStream(temp))) {
+				val entries = new ArrayList<ZipEntry>();
+				for (val entry : Collections.list(zip.entries()))
+					if (!entry.getName().equals(Descriptor.NAME))
+						entries.add(entry);
+				// stable, so everything else keeps its order
+				entries.sort(Comparator.comparingInt(WriteDescriptor::order));
+				boolean written = false;
+				for (val entry : entries) {
+					if (!written && order(entry) > 1) {
+						writeDescriptor(out, descriptor);
+						written = true;
+					}
+					val copied = new ZipEntry(entry);
+					if (copied.getMethod() != ZipEntry.STORED)
+						copied.setCompressedSize(-1);
+					out.putNextEntry(copied);
+					try (val is = zip.getInputStream(entry)) {
+						copy(is, out);
+					}
+					out.closeEntry();
+				}
+				if (!written)
+					writeDescriptor(out, descriptor);
+			}
+			Files.move(temp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static int order(ZipEntry entry) {
+		if (entry.getName().equals("META-INF/"))
+			return 0;
+		if (entry.getName().equals(JarFile.MANIFEST_NAME))
+			return 1;
+		return 2;
+	}
+
+	private static void writeDescriptor(ZipOutputStream out, byte[] descriptor) throws IOException {
+		out.putNextEntry(new ZipEntry(Descriptor.NAME));
+		out.write(descriptor);
+		out.closeEntry();
+	}
+
+	private static void copy(InputStream is, OutputStream os) throws IOException {
+		val buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) != -1)
+			os.write(buffer, 0, read);
+	}
+}
@@ -0,0 +1,45 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class DeclarationCacheTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	private static List<LibLoaderChained.Library> declarations(File source, String name) {
+		return Collections.singletonList(new LibLoaderChained.Library("org.example", name, null, Version.of("1.0"), String.format("%0128x", 1), null, "lib.jar", null, source));
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		File f = files.file("declarations.bin");
+		File jar = files.file("mod.jar");
+		File removedJar = files.file("removed.jar");
+		FileState modState = new FileState(jar.getPath(), 1, 2);
+		FileState removedState = new FileState(removedJar.getPath(), 1, 2);
+
+		DeclarationCache cache = DeclarationCache.read(f);
+		Assert.assertNull(cache.get(modState));
+		cache.put(modState, jar, declarations(jar, "a"));
+		cache.put(removedState, removedJar, declarations(removedJar, "b"));
+		cache.put("hash", jar, Collections.emptyList());
+		cache.write(f);
+
+		cache = DeclarationCache.read(f);
+		Assert.assertEquals(declarations(jar, "a"), cache.get(modState));
+		Assert.assertEquals(jar, cache.get(modState).get(0).source);
+		Assert.assertEquals(Collections.emptyList(), cache.get("hash"));
+		Assert.assertNull(cache.get(new FileState(jar.getPath(), 3, 2)));
+		cache.write(f);
+
+		// entries not used by the last resolution are dropped
+		cache = DeclarationCache.read(f);
+		Assert.assertNull(cache.get(removedState));
+		Assert.assertNotNull(cache.get(modState));
+	}
+}
@@ -0,0 +1,88 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+public class DescriptorTest {
+	private static final String HASH = String.format("%0128x", 42);
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	private static Manifest manifest() {
+		return TestFiles.manifest(
+			TestFiles.library("group", "org.example", "name", "example", "classifier", "deobf", "version", "1.2.3-beta", "sha512hash", HASH, "file", "META-INF/libraries/example.jar"),
+			TestFiles.library("group", "org.example", "name", "required", "version", "2"));
+	}
+
+	private File jar(String name, byte[] descriptor) throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		if (descriptor != null)
+			entries.put(Descriptor.NAME, descriptor);
+		entries.put("META-INF/libraries/example.jar", new byte[100]);
+		entries.put("a/A.class", new byte[0]);
+		return files.jar(name, manifest(), entries);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		File jar = jar("mod.jar", null);
+		byte[] descriptor = Descriptor.create(jar);
+		List<LibLoaderChained.Library> fromManifest = LibLoaderChained.readDeclarations(jar);
+		List<LibLoaderChained.Library> fromDescriptor = Descriptor.read(new ByteArrayInputStream(descriptor), "test", jar);
+		Assert.assertEquals(fromManifest, fromDescriptor);
+		Assert.assertEquals(100, fromDescriptor.get(0).size);
+		Assert.assertEquals(-1, fromDescriptor.get(1).size);
+		Assert.assertEquals("1.2.3-beta", fromDescriptor.get(0).version.toString());
+		Assert.assertNull(fromDescriptor.get(1).sha512hash);
+	}
+
+	@Test
+	public void testPreferred() throws Exception {
+		// the descriptor only declares the first library, so it must be what was read
+		List<LibLoaderChained.Library> first = LibLoaderChained.readDeclarations(jar("mod.jar", null)).subList(0, 1);
+		byte[] descriptor = Descriptor.write(first);
+		File jar = jar("described.jar", descriptor);
+		Assert.assertEquals(first, LibLoaderChained.readDeclarations(jar));
+
+		File outer = files.jar("outer.jar", null, Collections.singletonMap("inner.jar", Files.readAllBytes(jar.toPath())));
+		Assert.assertEquals(first, LibLoaderChained.readDeclarations(outer, "inner.jar", jar));
+
+		// a corrupt descriptor falls back to the manifest
+		descriptor[descriptor.length - 1]++;
+		Assert.assertEquals(2, LibLoaderChained.readDeclarations(jar("corrupt.jar", descriptor)).size());
+	}
+
+	@Test
+	public void testWriteDescriptor() throws Exception {
+		// a stale descriptor is replaced, and the manifest and descriptor are moved to the start
+		ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+		manifest().write(manifest);
+		Map<String, byte[]> entries = TestFiles.entries("a/A.class", "");
+		entries.put(JarFile.MANIFEST_NAME, manifest.toByteArray());
+		entries.put(Descriptor.NAME, Descriptor.write(Collections.emptyList()));
+		entries.put("META-INF/libraries/example.jar", new byte[100]);
+		File jar = files.jar("mod.jar", null, entries);
+		WriteDescriptor.write(jar);
+
+		List<String> names = new ArrayList<>();
+		try (ZipFile zip = new ZipFile(jar)) {
+			for (ZipEntry entry : Collections.list(zip.entries()))
+				names.add(entry.getName());
+			Assert.assertEquals(100, zip.getEntry("META-INF/libraries/example.jar").getSize());
+		}
+		Assert.assertEquals(Arrays.asList(JarFile.MANIFEST_NAME, Descriptor.NAME, "a/A.class", "META-INF/libraries/example.jar"), names);
+		Assert.assertArrayEquals(Descriptor.create(jar), Descriptor.write(LibLoaderChained.readDeclarations(jar)));
+
+		File outer = files.jar("outer.jar", null, Collections.singletonMap("inner.jar", Files.readAllBytes(jar.toPath())));
+		List<LibLoaderChained.Library> declarations = LibLoaderChained.readDeclarations(outer, "inner.jar", jar);
+		Assert.assertEquals(2, declarations.size());
+		Assert.assertEquals(100, declarations.get(0).size);
+	}
+}
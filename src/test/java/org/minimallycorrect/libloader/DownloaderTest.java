@@ -0,0 +1,112 @@
+package org.minimallycorrect.libloader;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+public class DownloaderTest {
+	private final byte[] content = new byte[300000];
+	private final AtomicInteger failures = new AtomicInteger();
+	private final AtomicLong served = new AtomicLong();
+	private volatile boolean ignoreRange;
+	@Rule
+	public final TestFiles files = new TestFiles();
+	private HttpServer server;
+	private URL url;
+	private File part;
+
+	@Before
+	public void setUp() throws Exception {
+		new Random(0).nextBytes(content);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/lib.jar", exchange -> {
+			if (failures.getAndDecrement() > 0) {
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+				return;
+			}
+			int offset = 0;
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			if (range != null && !ignoreRange)
+				offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+			// counted first, as the client can finish reading before the server thread returns from write
+			served.addAndGet(content.length - offset);
+			exchange.sendResponseHeaders(offset == 0 ? 200 : 206, content.length - offset);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(content, offset, content.length - offset);
+			}
+		});
+		server.start();
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/lib.jar");
+		part = files.file("lib.jar.part");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	private String expectedHash() throws Exception {
+		return Sha512.toHex(MessageDigest.getInstance("SHA-512").digest(content));
+	}
+
+	@Test
+	public void testDownload() throws Exception {
+		Assert.assertEquals(expectedHash(), Downloader.download(url, part, expectedHash()));
+		Assert.assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		Files.write(part.toPath(), Arrays.copyOf(content, 100000));
+		Assert.assertEquals(expectedHash(), Downloader.download(url, part, expectedHash()));
+		Assert.assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+		Assert.assertEquals(content.length - 100000, served.get());
+	}
+
+	@Test
+	public void testRestartsCorruptResume() throws Exception {
+		Files.write(part.toPath(), new byte[100000]);
+		Assert.assertEquals(expectedHash(), Downloader.download(url, part, expectedHash()));
+		Assert.assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		failures.set(2);
+		Assert.assertEquals(expectedHash(), Downloader.download(url, part, expectedHash()));
+		Assert.assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+	}
+
+	@Test
+	public void testRestartsCorruptResumeWithoutBackoff() throws Exception {
+		Files.write(part.toPath(), new byte[100000]);
+		failures.set(1);
+		long start = System.nanoTime();
+		Assert.assertEquals(expectedHash(), Downloader.download(url, part, expectedHash()));
+		// one backoff for the failure, none for the restart
+		Assert.assertTrue(System.nanoTime() - start < 1000_000_000L);
+		Assert.assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+		Assert.assertEquals(content.length - 100000 + content.length, served.get());
+	}
+
+	@Test
+	public void testServerIgnoringRange() throws Exception {
+		ignoreRange = true;
+		Files.write(part.toPath(), Arrays.copyOf(content, 100000));
+		long bytes = Timings.DOWNLOAD.bytes.get();
+		Assert.assertEquals(expectedHash(), Downloader.download(url, part, expectedHash()));
+		Assert.assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+		Assert.assertEquals(content.length, Timings.DOWNLOAD.bytes.get() - bytes);
+	}
+}
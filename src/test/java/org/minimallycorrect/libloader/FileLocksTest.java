@@ -0,0 +1,43 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class FileLocksTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testReentrant() {
+		File folder = files.getRoot();
+		Assert.assertEquals("inner", FileLocks.locked(folder, "a", () -> FileLocks.locked(folder, "a", () -> "inner")));
+	}
+
+	@Test
+	public void testExclusive() throws Exception {
+		File folder = files.getRoot();
+		AtomicInteger holders = new AtomicInteger();
+		AtomicInteger maxHolders = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 16; i++)
+				futures.add(executor.submit(() -> FileLocks.locked(folder, "library", () -> {
+					maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+					Thread.sleep(5);
+					return holders.decrementAndGet();
+				})));
+			for (Future<?> future : futures)
+				future.get();
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(1, maxHolders.get());
+	}
+}
@@ -0,0 +1,124 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+public class IndexedClassPathTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	private File before;
+	private File first;
+	private File second;
+	private File after;
+	private List<File> libs;
+	private final List<URL> mounted = new ArrayList<>();
+
+	@Before
+	public void createJars() throws Exception {
+		before = files.jar("before.jar", "shared.txt", "before", "META-INF/services/x", "before");
+		first = files.jar("first.jar", "shared.txt", "first", "a/A.txt", "first", "b/B.txt", "first", "META-INF/services/x", "first");
+		second = files.jar("second.jar", "a/A.txt", "second", "c/C.txt", "second", "META-INF/services/x", "second");
+		after = files.jar("after.jar", "a/A.txt", "after", "d/D.txt", "after", "META-INF/services/x", "after");
+		libs = Arrays.asList(first, second);
+	}
+
+	private Loader install(boolean lazy) throws Exception {
+		Loader loader = new Loader(before);
+		Map<String, List<File>> packages = PackageIndex.build(libs, files.file("index.bin"));
+		// the class path can only be replaced on Java 8
+		Assume.assumeTrue(IndexedClassPath.install(loader, libs, packages, lazy, mounted::add));
+		loader.addURL(after.toURI().toURL());
+		return loader;
+	}
+
+	private static List<URL> urls(File... files) throws Exception {
+		List<URL> urls = new ArrayList<>();
+		for (File file : files)
+			urls.add(file.toURI().toURL());
+		return urls;
+	}
+
+	private static String read(URL url) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"))) {
+			return reader.readLine();
+		}
+	}
+
+	private static List<String> readAll(Enumeration<URL> urls) throws IOException {
+		List<String> contents = new ArrayList<>();
+		while (urls.hasMoreElements())
+			contents.add(read(urls.nextElement()));
+		return contents;
+	}
+
+	@Test
+	public void testEagerMountsAllLibraries() throws Exception {
+		try (Loader loader = install(false)) {
+			Assert.assertEquals(urls(first, second), mounted);
+			Assert.assertEquals(urls(before, first, second, after), Arrays.asList(loader.getURLs()));
+			Assert.assertEquals("second", read(loader.getResource("c/C.txt")));
+			Assert.assertEquals("after", read(loader.getResource("d/D.txt")));
+		}
+	}
+
+	@Test
+	public void testLazyMountsOnFirstLookupOfPackage() throws Exception {
+		try (Loader loader = install(true)) {
+			Assert.assertEquals(Collections.emptyList(), mounted);
+			Assert.assertNull(loader.getResource("e/E.txt"));
+			Assert.assertEquals("after", read(loader.getResource("d/D.txt")));
+			Assert.assertEquals(Collections.emptyList(), mounted);
+
+			Assert.assertEquals("second", read(loader.getResource("c/C.txt")));
+			Assert.assertEquals(urls(second), mounted);
+			Assert.assertEquals(urls(before, second, after), Arrays.asList(loader.getURLs()));
+
+			Assert.assertEquals("first", read(loader.getResource("b/B.txt")));
+			Assert.assertEquals(urls(second, first), mounted);
+			// listed in the order the libraries were given, not the order they were mounted
+			Assert.assertEquals(urls(before, first, second, after), Arrays.asList(loader.getURLs()));
+		}
+	}
+
+	@Test
+	public void testLookupOrder() throws Exception {
+		for (boolean lazy : new boolean[]{false, true}) {
+			mounted.clear();
+			try (Loader loader = install(lazy)) {
+				Assert.assertEquals("before", read(loader.getResource("shared.txt")));
+				Assert.assertEquals("first", read(loader.getResource("a/A.txt")));
+				Assert.assertEquals(Arrays.asList("first", "second", "after"), readAll(loader.getResources("a/A.txt")));
+			}
+		}
+	}
+
+	@Test
+	public void testServicesAreMerged() throws Exception {
+		for (boolean lazy : new boolean[]{false, true}) {
+			mounted.clear();
+			try (Loader loader = install(lazy)) {
+				Assert.assertEquals(Arrays.asList("before", "first", "second", "after"), readAll(loader.getResources("META-INF/services/x")));
+				Assert.assertEquals(urls(first, second), mounted);
+			}
+		}
+	}
+
+	private static final class Loader extends URLClassLoader {
+		Loader(File jar) throws Exception {
+			super(urls(jar).toArray(new URL[0]), null);
+		}
+
+		@Override
+		public void addURL(URL url) {
+			super.addURL(url);
+		}
+	}
+}
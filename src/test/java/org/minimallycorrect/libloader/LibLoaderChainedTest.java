@@ -1,12 +1,50 @@
 package org.minimallycorrect.libloader;
 
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.*;
+import java.util.*;
+import java.util.jar.*;
+
 public class LibLoaderChainedTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testLibLoader() throws Exception {
+		File mods = files.newFolder("mods");
+		File libraries = files.newFolder("libraries");
+		System.setProperty("LibLoader.modsFolder", mods.getPath());
+		System.setProperty("LibLoader.librariesFolder", libraries.getPath());
+		try {
+			LibLoaderChained.init();
+		} finally {
+			System.clearProperty("LibLoader.modsFolder");
+			System.clearProperty("LibLoader.librariesFolder");
+		}
+		// written even though no mod declares any libraries
+		Assert.assertTrue(LibLoaderChained.instanceFile(libraries, mods, "libloader timings.json").isFile());
+	}
+
+	@Test
+	public void testReadDeclarations() throws Exception {
+		Manifest manifest = TestFiles.manifest(TestFiles.library("group", "group", "name", "lib", "version", "1.0"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		manifest.write(out);
+		// found through the central directory even when it is not the first entry, unlike with JarInputStream
+		Map<String, byte[]> entries = TestFiles.entries("a/A.class", "");
+		entries.put(JarFile.MANIFEST_NAME, out.toByteArray());
+		File jar = files.jar("mod.jar", null, entries);
+
+		List<LibLoaderChained.Library> declarations = LibLoaderChained.readDeclarations(jar);
+		Assert.assertEquals(1, declarations.size());
+		Assert.assertEquals("group", declarations.get(0).group);
+	}
+
 	@Test
-	public void testLibLoader() {
-		System.setProperty("LibLoader.modsFolder", "src/test/resources/mods");
-		System.setProperty("LibLoader.librariesFolder", "src/test/resources/libraries");
-		LibLoaderChained.init();
+	public void testReadDeclarationsWithoutManifest() throws Exception {
+		Assert.assertEquals(Collections.emptyList(), LibLoaderChained.readDeclarations(files.jar("mod.jar", "a/A.class", "")));
 	}
 }
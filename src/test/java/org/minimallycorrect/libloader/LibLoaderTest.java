@@ -0,0 +1,65 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class LibLoaderTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testSearch() throws Exception {
+		File mods = files.newFolder("mods");
+		files.file("mods/a.jar", "");
+		files.file("mods/b.zip", "");
+		files.file("mods/c.jlib", "");
+		Assert.assertEquals(3, LibLoader.search(mods).size());
+
+		// only jars, jlibs and zips count, and only in the mods folder or its mods and libraries folders
+		files.file("mods/notes.txt", "");
+		files.file("mods/1.12.2/versioned.jar", "");
+		Assert.assertEquals(3, LibLoader.search(mods).size());
+
+		files.file("mods/mods/nested.jar", "");
+		files.file("mods/libraries/deeper/lib.jlib", "");
+		Assert.assertEquals(5, LibLoader.search(mods).size());
+		Assert.assertEquals(LibLoader.search(mods), LibLoader.search(mods));
+
+		Object before = LibLoader.search(mods);
+		files.file("mods/mods/nested.jar", "changed size");
+		Assert.assertNotEquals(before, LibLoader.search(mods));
+	}
+
+	private File mod(String name, String version) throws IOException {
+		return files.jar("mods/" + name, "LibLoader.version", version, "LibLoader.jar", "");
+	}
+
+	private static List<String> probe(File mods, File index) {
+		List<String> versions = new ArrayList<>();
+		for (LibLoader.EmbeddedVersion embedded : LibLoader.probeEmbeddedVersions(mods, LibLoader.search(mods), index).values())
+			versions.add(embedded.version + (embedded.hasLibLoaderJar ? "" : " without LibLoader.jar"));
+		return versions;
+	}
+
+	@Test
+	public void testVersionIndex() throws Exception {
+		File mods = files.newFolder("mods");
+		File index = files.file("index.bin");
+		File mod = mod("mod.jar", "1.0");
+		files.file("mods/other.jar", "");
+		Assert.assertEquals(Arrays.asList("1.0", "null without LibLoader.jar"), probe(mods, index));
+
+		// a jar with the same path, time and size is not probed again
+		long time = mod.lastModified();
+		mod("mod.jar", "1.1");
+		Assert.assertTrue(mod.setLastModified(time));
+		Assert.assertEquals(Arrays.asList("1.0", "null without LibLoader.jar"), probe(mods, index));
+
+		mod("mod.jar", "1.0.1");
+		Assert.assertEquals(Arrays.asList("1.0.1", "null without LibLoader.jar"), probe(mods, index));
+	}
+}
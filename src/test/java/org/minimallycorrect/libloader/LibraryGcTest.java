@@ -0,0 +1,65 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class LibraryGcTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testCollect() throws Exception {
+		File libraries = files.getRoot();
+		File mods = files.file("mods");
+		File used = files.file("group/used/1.0/used-1.0.jar", "used");
+		File old = files.file("group/old/1.0/old-1.0.jar", "old");
+		File foreign = files.file("group/foreign/1.0/foreign-1.0.jar", "foreign");
+		LibraryGc.created(used);
+		LibraryGc.created(old);
+		LibraryGc.collect(libraries, mods, Arrays.asList(used, old), true, 5);
+
+		// a lease nobody holds a lock on does not protect anything
+		files.file("libloader leases/stale.lease", old.getAbsolutePath() + '\n');
+
+		for (int i = 0; i < 4; i++)
+			LibraryGc.collect(libraries, mods, Collections.singletonList(used), true, 5);
+		Assert.assertTrue(old.exists());
+		LibraryGc.collect(libraries, mods, Collections.singletonList(used), true, 5);
+		Assert.assertFalse(old.exists());
+		Assert.assertFalse(old.getParentFile().exists());
+		Assert.assertFalse(files.file("libloader leases/stale.lease").exists());
+
+		for (int i = 0; i < 6; i++)
+			LibraryGc.collect(libraries, mods, Collections.emptyList(), true, 5);
+		Assert.assertFalse(used.exists());
+		Assert.assertTrue(foreign.exists());
+	}
+
+	@Test
+	public void testInstancesKeepTheirOwnHistory() throws Exception {
+		File libraries = files.getRoot();
+		File first = files.file("first/mods");
+		File second = files.file("second/mods");
+		File shared = files.file("group/shared/1.0/shared-1.0.jar", "shared");
+		File firstOnly = files.file("group/first/1.0/first-1.0.jar", "first");
+		LibraryGc.created(shared);
+		LibraryGc.created(firstOnly);
+		LibraryGc.collect(libraries, first, Arrays.asList(shared, firstOnly), true, 5);
+		LibraryGc.collect(libraries, second, Collections.singletonList(shared), true, 5);
+
+		// the first instance is not running, so its libraries are kept however often the second resolves
+		for (int i = 0; i < 10; i++)
+			LibraryGc.collect(libraries, second, Collections.emptyList(), true, 5);
+		Assert.assertTrue(shared.exists());
+		Assert.assertTrue(firstOnly.exists());
+
+		for (int i = 0; i < 5; i++)
+			LibraryGc.collect(libraries, first, Collections.singletonList(firstOnly), true, 5);
+		Assert.assertFalse(shared.exists());
+		Assert.assertTrue(firstOnly.exists());
+	}
+}
@@ -0,0 +1,98 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class LibraryTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	private LibLoaderChained.Library library(String hash, File source) {
+		return new LibLoaderChained.Library("group", "lib", null, Version.of("1.0"), hash, null, "lib.jar", null, source);
+	}
+
+	@Test
+	public void testSaveFromArchive() throws Exception {
+		byte[] lib = TestFiles.jar(null, TestFiles.entries("a/A.class", "a"));
+		File libFile = files.file("lib.jar", lib);
+		File mod = files.jar("mods/mod.jar", null, Collections.singletonMap("lib.jar", lib));
+		File libraries = files.file("libraries");
+		LibLoaderChained.Library library = library(Sha512.compute(libFile), mod);
+
+		try (LibLoaderChained.Archive archive = new LibLoaderChained.Archive(mod)) {
+			File saved = library.save(libraries, archive);
+			Assert.assertEquals(new File(libraries, "group/lib-1.0/lib-1.0.jar"), saved);
+			Assert.assertArrayEquals(lib, Files.readAllBytes(saved.toPath()));
+		}
+		// a saved library is only verified, not extracted again
+		Assert.assertEquals(library.getFile(libraries), library.save(libraries, new LibLoaderChained.Archive(files.file("missing.jar"))));
+	}
+
+	@Test
+	public void testStore() throws Exception {
+		File libraries = files.file("libraries");
+		File jar = files.jar("libraries/group/lib-1.0/lib-1.0.jar", "a/A.class", "a");
+		String hash = Sha512.compute(jar);
+		library(hash, null).addToStore(libraries, jar);
+		File stored = LibLoaderChained.getStoreFile(libraries, hash);
+		Assert.assertArrayEquals(Files.readAllBytes(jar.toPath()), Files.readAllBytes(stored.toPath()));
+
+		// the same jar declared under other coordinates is linked from the store, without hashing it again
+		LibLoaderChained.Library renamed = new LibLoaderChained.Library("group", "renamed", null, Version.of("2.0"), hash, null, "lib.jar", null, null);
+		File renamedJar = renamed.getFile(libraries);
+		Assert.assertTrue(renamed.linkFromStore(libraries, renamedJar));
+		Assert.assertEquals(hash, renamed.calculatedHash);
+		Assert.assertArrayEquals(Files.readAllBytes(jar.toPath()), Files.readAllBytes(renamedJar.toPath()));
+
+		Assert.assertFalse(library(String.format("%0128x", 1), null).linkFromStore(libraries, files.file("other.jar")));
+
+		// store entries are trusted to match their name, so a linked jar is known by that hash rather than hashed
+		String fakeHash = String.format("%0128x", 2);
+		files.file("fake.jar", "fake");
+		library(fakeHash, null).addToStore(libraries, files.file("fake.jar"));
+		File fakeJar = files.file("libraries/fake.jar");
+		Assert.assertTrue(library(fakeHash, null).linkFromStore(libraries, fakeJar));
+		Assert.assertEquals(fakeHash, Sha512.hash(fakeJar));
+	}
+
+	@Test
+	public void testInstallRejectsWrongHash() throws Exception {
+		File jar = files.file("libraries/lib.jar", "existing");
+		LibLoaderChained.Library library = library(String.format("%0128x", 1), null);
+		try {
+			library.install(new ByteArrayInputStream(new byte[]{1, 2, 3}), jar);
+			Assert.fail();
+		} catch (Error expected) {
+			Assert.assertTrue(expected.getMessage(), expected.getMessage().startsWith("Wrong hash"));
+		}
+		Assert.assertArrayEquals("existing".getBytes("UTF-8"), Files.readAllBytes(jar.toPath()));
+		Assert.assertEquals(Collections.singletonList(jar), Arrays.asList(jar.getParentFile().listFiles()));
+	}
+
+	@Test
+	public void testInstalledFilesHaveDefaultPermissions() throws Exception {
+		Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		byte[] content = {1, 2, 3};
+		File expected = files.file("libraries/expected.jar", content);
+		File jar = files.file("libraries/lib.jar");
+		library(Sha512.compute(expected), null).install(new ByteArrayInputStream(content), jar);
+		Assert.assertEquals(Files.getPosixFilePermissions(expected.toPath()), Files.getPosixFilePermissions(jar.toPath()));
+	}
+
+	@Test
+	public void testInvalidBuildTimeIsTreatedAsMissing() {
+		LibLoaderChained.Library built = new LibLoaderChained.Library("group", "lib", null, Version.of("1.0"), null, null, "lib.jar", "2", null);
+		LibLoaderChained.Library invalid = new LibLoaderChained.Library("group", "lib", null, Version.of("1.0"), null, null, "lib.jar", "2019-01-01", null);
+		LibLoaderChained.Library missing = library(null, null);
+
+		Assert.assertEquals(Long.MIN_VALUE, invalid.buildTimeValue);
+		Assert.assertEquals(0, invalid.compareTo(missing));
+		Assert.assertTrue(built.compareTo(invalid) > 0);
+	}
+}
@@ -0,0 +1,36 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class MergedJarTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testMerge() throws Exception {
+		File first = files.jar("first.jar", "a/A.class", "first", "META-INF/services/a.Service", "a.First");
+		File second = files.jar("second.jar", "a/A.class", "second", "b/B.class", "b", "META-INF/services/a.Service", "b.Second");
+		File signed = files.jar("signed.jar", "c/C.class", "c", "META-INF/SIGNER.SF", "");
+		File libraries = files.file("libraries");
+
+		List<File> merged = MergedJar.merge(Arrays.asList(first, second, signed), libraries);
+		Assert.assertEquals(2, merged.size());
+		Assert.assertEquals(signed, merged.get(1));
+		try (ZipFile zip = new ZipFile(merged.get(0))) {
+			Assert.assertEquals("first", TestFiles.read(zip, "a/A.class"));
+			Assert.assertEquals("b", TestFiles.read(zip, "b/B.class"));
+			Assert.assertNull(TestFiles.read(zip, "c/C.class"));
+			Assert.assertEquals("a.First\nb.Second\n", TestFiles.read(zip, "META-INF/services/a.Service"));
+		}
+
+		long modified = merged.get(0).lastModified();
+		Assert.assertEquals(merged, MergedJar.merge(Arrays.asList(first, second, signed), libraries));
+		Assert.assertEquals(modified, merged.get(0).lastModified());
+	}
+}
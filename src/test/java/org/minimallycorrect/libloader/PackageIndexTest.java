@@ -0,0 +1,40 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class PackageIndexTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testGetPackage() {
+		Assert.assertEquals("a/b", PackageIndex.getPackage("a/b/C.class"));
+		Assert.assertEquals("a/b", PackageIndex.getPackage("a/b/"));
+		Assert.assertEquals("", PackageIndex.getPackage("log4j2.xml"));
+	}
+
+	@Test
+	public void testPackages() throws Exception {
+		File jar = files.jar("a.jar", "a/b/C.class", "", "META-INF/services/x", "");
+		Assert.assertEquals(Arrays.asList("META-INF", "META-INF/services", "a", "a/b"), PackageIndex.packages(jar));
+	}
+
+	@Test
+	public void testBuild() throws Exception {
+		File first = files.jar("first.jar", "a/b/C.class", "", "root.txt", "");
+		File second = files.jar("second.jar", "a/b/D.class", "", "c/E.class", "");
+		File index = files.file("index.bin");
+		for (int i = 0; i < 2; i++) {
+			Map<String, List<File>> packages = PackageIndex.build(Arrays.asList(first, second), index);
+			Assert.assertEquals(Arrays.asList(first, second), packages.get("a/b"));
+			Assert.assertEquals(Collections.singletonList(second), packages.get("c"));
+			Assert.assertEquals(Collections.singletonList(first), packages.get(""));
+			Assert.assertNull(packages.get("d"));
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+public class PoolsTest {
+	@Test
+	public void testDedicatedThreads() {
+		String io = Pools.io(() -> Thread.currentThread().getName());
+		String cpu = Pools.io(() -> Pools.cpu(() -> Thread.currentThread().getName()));
+		Assert.assertTrue(io, io.startsWith("LibLoader I/O #"));
+		Assert.assertTrue(cpu, cpu.startsWith("LibLoader CPU #"));
+	}
+
+	@Test
+	public void testWaitingTasksDoNotDeadlock() {
+		// every task waits until all of them have started, which needs more threads than the pool's parallelism
+		int tasks = Pools.IO.getParallelism() * 4;
+		AtomicInteger started = new AtomicInteger();
+		CompletableFuture<Void> allStarted = new CompletableFuture<>();
+		int finished = Pools.io(() -> IntStream.range(0, tasks).parallel().map(i -> {
+			if (started.incrementAndGet() == tasks)
+				allStarted.complete(null);
+			Pools.join(allStarted);
+			return 1;
+		}).sum());
+		Assert.assertEquals(tasks, finished);
+	}
+}
@@ -0,0 +1,54 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.jar.*;
+
+public class ProvisionTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testFirstStartFindsNoChanges() throws Exception {
+		File mods = files.newFolder("mods");
+		File libraries = files.file("libraries");
+		byte[] version = "1.0".getBytes(StandardCharsets.UTF_8);
+		byte[] libLoader = TestFiles.jar(null, Collections.singletonMap("LibLoader.version", version));
+		byte[] lib = TestFiles.jar(null, Collections.singletonMap("a/A.class", new byte[]{1, 2, 3}));
+		File libFile = files.file("lib.jar", lib);
+
+		Manifest manifest = TestFiles.manifest(TestFiles.library("group", "group", "name", "lib", "version", "1.0", "sha512hash", Sha512.compute(libFile), "file", "lib.jar"));
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("LibLoader.version", version);
+		entries.put("LibLoader.jar", libLoader);
+		entries.put("lib.jar", lib);
+		files.jar("mods/mod.jar", manifest, entries);
+
+		Provision.main(new String[]{mods.getPath(), libraries.getPath()});
+
+		File libLoaderJar = new File(mods, "# LibLoader.jar");
+		File extracted = new File(libraries, "group/lib-1.0/lib-1.0.jar");
+		Assert.assertTrue(libLoaderJar.isFile());
+		Assert.assertTrue(extracted.isFile());
+		Assert.assertEquals(Boolean.FALSE, LibLoader.checkForChanges(mods, libraries, libLoaderJar, false));
+		Assert.assertEquals(Collections.singletonList(extracted), LibLoaderChained.loadLibraries(mods, libraries, false));
+	}
+
+	@Test
+	public void testRemovesStateFromBeforePerInstanceFiles() throws Exception {
+		File mods = files.newFolder("mods");
+		File libraries = files.newFolder("libraries");
+		File modState = files.file("libraries/libloader mod state.obj", "old");
+		File cachedLibs = files.file("libraries/libloader cached libs.txt", "old");
+
+		Assert.assertEquals(Boolean.TRUE, LibLoader.checkForChanges(mods, libraries, new File(mods, "# LibLoader.jar"), false));
+		Assert.assertEquals(Collections.emptyList(), LibLoaderChained.loadLibraries(mods, libraries, true));
+		Assert.assertFalse(modState.exists());
+		Assert.assertFalse(cachedLibs.exists());
+	}
+}
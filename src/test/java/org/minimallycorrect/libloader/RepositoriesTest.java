@@ -0,0 +1,45 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class RepositoriesTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+	private String hash;
+
+	@Before
+	public void setUp() throws Exception {
+		hash = Sha512.compute(files.file("content.jar", "library"));
+	}
+
+	private LibLoaderChained.Library library() {
+		return new LibLoaderChained.Library("org.example", "lib", "deobf", Version.of("1.0"), hash, "https://example.org/files/lib-mirror.jar", null, null, null);
+	}
+
+	@Test
+	public void testSearchOrder() throws Exception {
+		File maven = files.file("maven");
+		File gradle = files.file("gradle");
+		File downloads = files.file("downloads");
+		List<File> roots = Arrays.asList(maven, gradle);
+		Assert.assertNull(Repositories.find(library(), roots, downloads));
+
+		File mirrored = files.file("downloads/lib-mirror.jar", "library");
+		Assert.assertEquals(mirrored, Repositories.find(library(), roots, downloads));
+
+		File cached = files.file("gradle/org.example/lib/1.0/0123abcd/lib-1.0-deobf.jar", "library");
+		Assert.assertEquals(cached, Repositories.find(library(), roots, downloads));
+
+		// a file with the wrong hash is skipped
+		files.file("maven/org/example/lib/1.0/lib-1.0-deobf.jar", "something else");
+		Assert.assertEquals(cached, Repositories.find(library(), roots, downloads));
+		File installed = files.file("maven/org/example/lib/1.0/lib-1.0-deobf.jar", "library");
+		Assert.assertEquals(installed, Repositories.find(library(), roots, downloads));
+	}
+}
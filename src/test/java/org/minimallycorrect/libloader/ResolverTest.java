@@ -0,0 +1,117 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.jar.*;
+
+public class ResolverTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	private static String hash(byte[] jar) throws Exception {
+		return Sha512.toHex(MessageDigest.getInstance("SHA-512").digest(jar));
+	}
+
+	/**
+	 * @param libraries alternating declared versions and embedded jars, each declared under the name "lib" + index
+	 */
+	private static byte[] jar(String name, Object... libraries) throws Exception {
+		List<Map<String, String>> declarations = new ArrayList<>();
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put(name + ".class", new byte[0]);
+		for (int i = 0; i < libraries.length; i += 2) {
+			String[] coordinates = ((String) libraries[i]).split(":");
+			byte[] jar = (byte[]) libraries[i + 1];
+			String file = coordinates[0] + '-' + coordinates[1] + ".jar";
+			declarations.add(TestFiles.library("group", "group", "name", coordinates[0], "version", coordinates[1], "sha512hash", hash(jar), "file", file));
+			entries.put(file, jar);
+		}
+		return TestFiles.jar(TestFiles.manifest(declarations), entries);
+	}
+
+	private List<String> resolve(File... jars) {
+		return resolveInto(files.file("libraries"), jars);
+	}
+
+	private List<String> resolveInto(File libraries, File... jars) {
+		Collection<LibLoaderChained.Library> resolved = new Resolver(libraries, DeclarationCache.read(files.file("declarations.bin"))).resolve(Arrays.asList(jars));
+		List<String> names = new ArrayList<>();
+		for (LibLoaderChained.Library lib : resolved)
+			names.add(lib.toString());
+		Collections.sort(names);
+		return names;
+	}
+
+	@Test
+	public void testSupersededInSameRound() throws Exception {
+		byte[] y = jar("y");
+		File a = files.file("mods/a.jar", jar("a", "x:1.0", jar("x1", "y:1.0", y)));
+		File b = files.file("mods/b.jar", jar("b", "x:2.0", jar("x2")));
+
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals(Collections.singletonList("group.x-2.0"), resolve(a, b));
+			Assert.assertEquals(Collections.singletonList("group.x-2.0"), resolve(b, a));
+		}
+		// the losing version was never extracted
+		Assert.assertFalse(files.file("libraries/group/x-1.0").exists());
+		Assert.assertFalse(files.file("libraries/group/y-1.0").exists());
+	}
+
+	@Test
+	public void testSupersededInLaterRound() throws Exception {
+		// z embeds a newer x, which is only found once z is read, after x-1.0 already selected y
+		File a = files.file("mods/a.jar", jar("a", "x:1.0", jar("x1", "y:1.0", jar("y")), "z:1.0", jar("z", "x:2.0", jar("x2"))));
+		for (int i = 0; i < 4; i++)
+			Assert.assertEquals(Arrays.asList("group.x-2.0", "group.z-1.0"), resolve(a));
+	}
+
+	@Test
+	public void testEqualVersionsResolveByJarPath() throws Exception {
+		byte[] first = jar("first");
+		File a = files.file("mods/a.jar", jar("a", "x:1.0", first));
+		File b = files.file("mods/b.jar", jar("b", "x:1.0", jar("second")));
+
+		for (int i = 0; i < 4; i++) {
+			Collection<LibLoaderChained.Library> resolved = new Resolver(files.file("libraries"), DeclarationCache.read(files.file("declarations.bin"))).resolve(i % 2 == 0 ? Arrays.asList(a, b) : Arrays.asList(b, a));
+			Assert.assertEquals(1, resolved.size());
+			Assert.assertEquals(hash(first), resolved.iterator().next().sha512hash);
+		}
+	}
+
+	@Test
+	public void testNestedLibraries() throws Exception {
+		File a = files.file("mods/a.jar", jar("a", "x:1.0", jar("x", "y:1.0", jar("y", "w:1.0", jar("w")))));
+		Assert.assertEquals(Arrays.asList("group.w-1.0", "group.x-1.0", "group.y-1.0"), resolve(a));
+		Assert.assertTrue(files.file("libraries/group/w-1.0/w-1.0.jar").isFile());
+	}
+
+	@Test
+	public void testRunningSavesFinishBeforeResolveReturns() throws Exception {
+		// x-1.0 is large, so its speculative save may still be running when x-2.0 supersedes it and resolution finishes
+		byte[] large = new byte[4 << 20];
+		new Random(0).nextBytes(large);
+		Map<String, byte[]> entries = TestFiles.entries("x1.class", "");
+		entries.put("large.bin", large);
+		File a = files.file("mods/a.jar", jar("a", "x:1.0", TestFiles.jar(null, entries), "z:1.0", jar("z", "x:2.0", jar("x2"))));
+
+		for (int i = 0; i < 4; i++) {
+			File libraries = files.newFolder("libraries" + i);
+			Assert.assertEquals(Arrays.asList("group.x-2.0", "group.z-1.0"), resolveInto(libraries, a));
+			File superseded = new File(libraries, "group/x-1.0");
+			List<String> saved = list(superseded);
+			// a save which is still running holds the lock for its jar until it has been written
+			Assert.assertEquals(saved, FileLocks.locked(libraries, "group/x-1.0/x-1.0.jar", () -> list(superseded)));
+			Assert.assertTrue(saved.isEmpty() || saved.equals(Collections.singletonList("x-1.0.jar")));
+		}
+	}
+
+	private static List<String> list(File folder) {
+		String[] names = folder.list();
+		return names == null ? Collections.<String>emptyList() : Arrays.asList(names);
+	}
+}
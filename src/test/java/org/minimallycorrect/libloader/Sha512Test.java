@@ -0,0 +1,38 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+
+public class Sha512Test {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testLedgerRoundTrip() throws Exception {
+		File jar = files.file("lib.jar", "first");
+		File ledger = files.file("ledger.bin");
+		String hash = Sha512.hash(jar);
+		Assert.assertEquals(Sha512.compute(jar), hash);
+		Sha512.save(ledger);
+
+		long hashed = Timings.HASH.count.get();
+		Sha512.load(ledger);
+		Assert.assertEquals(hash, Sha512.hash(jar));
+		Assert.assertEquals(hashed, Timings.HASH.count.get());
+	}
+
+	@Test
+	public void testChangedFileIsHashedAgain() throws Exception {
+		File jar = files.file("lib.jar", "first");
+		File ledger = files.file("ledger.bin");
+		Sha512.hash(jar);
+		Sha512.save(ledger);
+
+		files.file("lib.jar", "second, longer");
+		Sha512.load(ledger);
+		Assert.assertEquals(Sha512.compute(jar), Sha512.hash(jar));
+	}
+}
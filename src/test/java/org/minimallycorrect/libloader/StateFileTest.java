@@ -0,0 +1,64 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class StateFileTest {
+	private static final int MAGIC = 0x54455354;
+	@Rule
+	public final TestFiles files = new TestFiles();
+	private File file;
+
+	@Before
+	public void setUp() {
+		file = files.file("state.bin");
+	}
+
+	private void write(List<String> values) {
+		StateFile.write(file, MAGIC, 1, out -> {
+			out.writeInt(values.size());
+			for (String value : values)
+				out.writeUTF(value);
+		});
+	}
+
+	private List<String> read(int version) {
+		return StateFile.read(file, MAGIC, version, in -> {
+			int count = in.readInt();
+			List<String> values = new ArrayList<>();
+			for (int i = 0; i < count; i++)
+				values.add(in.readUTF());
+			return values;
+		});
+	}
+
+	@Test
+	public void testRoundTrip() {
+		write(Arrays.asList("a", "b", "c"));
+		Assert.assertEquals(Arrays.asList("a", "b", "c"), read(1));
+		Assert.assertNull(read(2));
+	}
+
+	@Test
+	public void testCorrupt() throws Exception {
+		write(Arrays.asList("a", "b", "c"));
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		bytes[bytes.length - 6] ^= 1;
+		Files.write(file.toPath(), bytes);
+		Assert.assertNull(read(1));
+	}
+
+	@Test
+	public void testLegacySerializedFile() throws Exception {
+		try (ObjectOutputStream os = new ObjectOutputStream(new FileOutputStream(file))) {
+			os.writeObject(new ArrayList<>(Arrays.asList("a", "b")));
+		}
+		Assert.assertNull(read(1));
+	}
+}
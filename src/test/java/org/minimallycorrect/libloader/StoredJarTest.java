@@ -0,0 +1,36 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class StoredJarTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@Test
+	public void testRepack() throws Exception {
+		StringBuilder compressible = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+			compressible.append("compressible ");
+		File lib = files.jar("lib-1.0.jar", "a/", "", "a/A.class", compressible.toString());
+
+		File stored = StoredJar.repack(Collections.singletonList(lib), files.getRoot()).get(0);
+		Assert.assertEquals(files.file("lib-1.0.stored.jar"), stored);
+		Assert.assertEquals(Sha512.hash(lib), Sha512.origin(stored));
+		try (ZipFile original = new ZipFile(lib); ZipFile copy = new ZipFile(stored)) {
+			Assert.assertEquals(original.size(), copy.size());
+			ZipEntry entry = copy.getEntry("a/A.class");
+			Assert.assertEquals(ZipEntry.STORED, entry.getMethod());
+			Assert.assertEquals(original.getEntry("a/A.class").getCrc(), entry.getCrc());
+		}
+
+		long modified = stored.lastModified();
+		Assert.assertEquals(stored, StoredJar.repack(Collections.singletonList(lib), files.getRoot()).get(0));
+		Assert.assertEquals(modified, stored.lastModified());
+	}
+}
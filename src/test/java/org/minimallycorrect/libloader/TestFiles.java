@@ -0,0 +1,118 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+/**
+ * Temporary folder deleted after each test, with helpers to write the files and jars the tests work on
+ * <p>
+ * Use as {@code @Rule public final TestFiles files = new TestFiles();}
+ */
+public class TestFiles extends TemporaryFolder {
+	public File file(String path) {
+		return new File(getRoot(), path);
+	}
+
+	/**
+	 * Writes a file at the given path in the folder, creating its parent folders
+	 */
+	public File file(String path, byte[] content) throws IOException {
+		File file = file(path);
+		Files.createDirectories(file.getParentFile().toPath());
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	public File file(String path, String content) throws IOException {
+		return file(path, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a jar with the given entry names and contents, alternating
+	 */
+	public File jar(String path, String... entries) throws IOException {
+		return jar(path, null, entries(entries));
+	}
+
+	public File jar(String path, Manifest manifest, Map<String, byte[]> entries) throws IOException {
+		return file(path, jar(manifest, entries));
+	}
+
+	/**
+	 * @param manifest manifest to write first, or null for none
+	 */
+	public static byte[] jar(Manifest manifest, Map<String, byte[]> entries) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (JarOutputStream jos = manifest == null ? new JarOutputStream(out) : new JarOutputStream(out, manifest)) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				jos.putNextEntry(new JarEntry(entry.getKey()));
+				jos.write(entry.getValue());
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Entries in the given order, from alternating names and UTF-8 contents
+	 */
+	public static Map<String, byte[]> entries(String... entries) {
+		Map<String, byte[]> map = new LinkedHashMap<>();
+		for (int i = 0; i < entries.length; i += 2)
+			map.put(entries[i], entries[i + 1].getBytes(StandardCharsets.UTF_8));
+		return map;
+	}
+
+	/**
+	 * Manifest declaring the given libraries, each a map of attributes without the "LibLoader-" prefix and index
+	 */
+	@SafeVarargs
+	public static Manifest manifest(Map<String, String>... libraries) {
+		List<Map<String, String>> list = new ArrayList<>();
+		for (Map<String, String> library : libraries)
+			list.add(library);
+		return manifest(list);
+	}
+
+	public static Manifest manifest(List<Map<String, String>> libraries) {
+		Manifest manifest = new Manifest();
+		Attributes main = manifest.getMainAttributes();
+		main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		for (int i = 0; i < libraries.size(); i++)
+			for (Map.Entry<String, String> attribute : libraries.get(i).entrySet())
+				main.putValue("LibLoader-" + attribute.getKey() + i, attribute.getValue());
+		return manifest;
+	}
+
+	/**
+	 * Attributes of a library declaration, from alternating names and values
+	 */
+	public static Map<String, String> library(String... attributes) {
+		Map<String, String> map = new LinkedHashMap<>();
+		for (int i = 0; i < attributes.length; i += 2)
+			map.put(attributes[i], attributes[i + 1]);
+		return map;
+	}
+
+	/**
+	 * @return the UTF-8 content of the entry, or null if it is missing
+	 */
+	public static String read(ZipFile zip, String name) throws IOException {
+		ZipEntry entry = zip.getEntry(name);
+		if (entry == null)
+			return null;
+		try (InputStream is = zip.getInputStream(entry)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int read;
+			byte[] buffer = new byte[1024];
+			while ((read = is.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.minimallycorrect.libloader;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.file.*;
+import java.util.*;
+
+public class TimingsTest {
+	@Rule
+	public final TestFiles files = new TestFiles();
+
+	@After
+	public void tearDown() {
+		System.clearProperty("LibLoader.timings");
+	}
+
+	@Test
+	public void testOuterPhases() {
+		System.setProperty("LibLoader.timings", "scan:1000:1250:200000000:1:40:4096;state:0:0:0:0:0:0;broken:1");
+		String summary = Timings.summary();
+		Assert.assertTrue(summary, summary.contains("scan: 250ms wall, 200ms total, 40 files, 4KiB"));
+		Assert.assertFalse(summary, summary.contains("state:"));
+		Assert.assertFalse(summary, summary.contains("broken"));
+		// reading the property again gives the same phases
+		Assert.assertEquals(summary, Timings.summary());
+	}
+
+	/**
+	 * Records through reflection, as the tests also build against Java 8 versions without JFR
+	 */
+	@Test
+	public void testJfrEvent() throws Exception {
+		Assume.assumeTrue(PhaseEvent.isAvailable());
+		Path file = files.file("timings.jfr").toPath();
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.getConstructor().newInstance();
+		recordingClass.getMethod("enable", String.class).invoke(recording, PhaseEvent.NAME);
+		recordingClass.getMethod("start").invoke(recording);
+		Timings.Timer timer = Timings.MANIFEST.start();
+		Thread.sleep(1);
+		timer.close();
+		recordingClass.getMethod("stop").invoke(recording);
+		recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+		recordingClass.getMethod("close").invoke(recording);
+
+		List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, file);
+		Class<?> recordedEvent = Class.forName("jdk.jfr.consumer.RecordedObject");
+		boolean found = false;
+		for (Object event : events)
+			found |= "manifest".equals(recordedEvent.getMethod("getString", String.class).invoke(event, "phase"));
+		Assert.assertTrue(found);
+	}
+}
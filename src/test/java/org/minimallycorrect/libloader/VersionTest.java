@@ -6,7 +6,40 @@ import org.junit.Test;
 public class VersionTest {
 	@Test
 	public void testVersion() {
-		Assert.assertTrue(new LibLoaderChained.Version("1").compareTo(new LibLoaderChained.Version("0.1")) > 0);
-		Assert.assertTrue(new LibLoaderChained.Version("1").compareTo(new LibLoaderChained.Version("1-SNAPSHOT")) > 0);
+		Assert.assertTrue(Version.of("1").compareTo(Version.of("0.1")) > 0);
+		Assert.assertTrue(Version.of("1").compareTo(Version.of("1-SNAPSHOT")) > 0);
+		Assert.assertTrue(Version.of("1-beta").compareTo(Version.of("1-alpha")) > 0);
+		Assert.assertTrue(Version.of("1-rc1").compareTo(Version.of("1-SNAPSHOT")) > 0);
+		Assert.assertTrue(Version.of("1.10").compareTo(Version.of("1.9.9")) > 0);
+	}
+
+	@Test
+	public void testParse() {
+		Version version = Version.of(" 1.012.2-SNAPSHOT ");
+		Assert.assertArrayEquals(new int[]{1, 12, 2}, version.parts);
+		Assert.assertEquals("SNAPSHOT", version.suffix);
+		Assert.assertEquals(-2, version.suffixInt());
+		Assert.assertEquals("1.12.2-SNAPSHOT", version.toString());
+		Assert.assertSame(Version.of("1.12.2-SNAPSHOT"), Version.of(new int[]{1, 12, 2}, "SNAPSHOT"));
+		Assert.assertSame(Version.of("1.0"), Version.of("1.0"));
+		Assert.assertSame(Version.of("1.0"), Version.of(" 1.0 "));
+		Assert.assertSame(Version.of("1.0"), Version.of("01.0"));
+		Assert.assertSame(Version.of(" 1.012.2-SNAPSHOT "), Version.of(new int[]{1, 12, 2}, "SNAPSHOT"));
+		for (String invalid : new String[]{"", "1.", ".1", "1..2", "a", "1.a-b", "99999999999"}) {
+			try {
+				Version.of(invalid);
+				Assert.fail("Parsed invalid version '" + invalid + '\'');
+			} catch (IllegalArgumentException ignored) {
+			}
+		}
+	}
+
+	@Test
+	public void testEquals() {
+		Assert.assertEquals(Version.of("1.0"), Version.of("1"));
+		Assert.assertEquals(Version.of("1.0").hashCode(), Version.of("1").hashCode());
+		Assert.assertNotEquals(Version.of("1"), Version.of("1-"));
+		Assert.assertTrue(Version.of("1-").compareTo(Version.of("1")) > 0);
+		Assert.assertTrue(Version.of("1").compareTo(Version.of("1-")) < 0);
 	}
 }